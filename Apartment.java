@@ -1,3 +1,5 @@
+import java.util.ArrayList;
+
 
 /**
  * Represents an Apartment object with attributes such as number of rooms, area, price, tenant, and rental dates.
@@ -18,12 +20,14 @@ public class Apartment
     private double _area; // area of house (number bigger than 0).
     private double _price; //price of rent (number bigger than 0).
     private Person _tenant; // tenant of the house.
-    private Date _rentalStartDate; // date start rent.
-    private Date _rentalEndDate; // date end rent.
+    private ImmutableDate _rentalStartDate; // date start rent (immutable, shared between copies).
+    private ImmutableDate _rentalEndDate; // date end rent (immutable, shared between copies).
+    private ArrayList<ApartmentListener> _listeners; // listeners told about changes (null if none).
     private static final int INVALID = 0;
     private static final int DEFFAULT_ROOM_NUMBERS =3;
     private static final int DEFFAULT_AREA = 80;
     private static final int DEFFAULT_PRICE = 5000;
+    private static final int MAX_DAYS_LEFT_TO_CHANGE = 90; //tenant can be changed only 90 days or less before the end.
     //date end rent ( must be after the  date of start of the rent).
     /**
      *  Apartment Constructor
@@ -43,6 +47,7 @@ public class Apartment
     int rentalEndDay,int rentalEndMonth,int rentalEndYear)
     {
         if(noOfRooms <= INVALID){ //invalid value.
+            Metrics.defaultUsed(ApartmentMetrics.Fallback.NO_OF_ROOMS);
             _noOfRooms = DEFFAULT_ROOM_NUMBERS; //deffault
         }
         else
@@ -50,6 +55,7 @@ public class Apartment
             _noOfRooms = noOfRooms; //valid.
         }
         if(area <= INVALID){ // invalid value
+            Metrics.defaultUsed(ApartmentMetrics.Fallback.AREA);
             _area = DEFFAULT_AREA; //deffault
         }
         else
@@ -57,6 +63,7 @@ public class Apartment
             _area = area; //valid
         }
         if(price <= INVALID){ //invalid
+            Metrics.defaultUsed(ApartmentMetrics.Fallback.PRICE);
             _price = DEFFAULT_PRICE; //deffault
         }
         else
@@ -64,12 +71,16 @@ public class Apartment
             _price = price; //valid
         }
         _tenant = new Person(tenant);  //Person class will handle problems.
-        _rentalStartDate = new Date(rentalStartDay,rentalStartMonth,rentalStartYear); //date class will handle problems.
-        _rentalEndDate = new Date(rentalEndDay,rentalEndMonth,rentalEndYear); //create object with date rules.
-        if(_rentalEndDate.before(_rentalStartDate) || _rentalEndDate.equals(_rentalStartDate))
+        _rentalStartDate = ImmutableDate.valueOf(rentalStartDay,rentalStartMonth,rentalStartYear); //date rules handle problems.
+        _rentalEndDate = ImmutableDate.valueOf(rentalEndDay,rentalEndMonth,rentalEndYear); //create with date rules.
+        if(!_rentalEndDate.after(_rentalStartDate))
         { //invalid if before or equals.
-            _rentalEndDate.setYear(_rentalStartDate.getYear()+1);
-            //equals or before set 1year after start.
+            Metrics.defaultUsed(ApartmentMetrics.Fallback.RENTAL_END_DATE);
+            int endYear = _rentalStartDate.getYear()+1;
+            if(Date.validDateValue(_rentalEndDate.getDay(),_rentalEndDate.getMonth(),endYear)){
+                _rentalEndDate = ImmutableDate.valueOf(_rentalEndDate.getDay(),_rentalEndDate.getMonth(),endYear);
+            }
+            //equals or before set 1year after start (like Date.setYear, only if the date stays valid).
             //we dont get in if after and the create of the object will stay same as inilize.
         }
     }
@@ -83,8 +94,8 @@ public class Apartment
         _area = other._area;//copy
         _price = other._price;//copy
         _tenant = new Person(other._tenant); //avoid aliasing create new and copy.
-        _rentalStartDate = new Date(other._rentalStartDate); //avoid aliasing create new and copy.
-        _rentalEndDate = new Date(other._rentalEndDate); //avoid aliasing create new and copy.
+        _rentalStartDate = other._rentalStartDate; //immutable, safe to share.
+        _rentalEndDate = other._rentalEndDate; //immutable, safe to share.
     }
 
     /**
@@ -119,12 +130,20 @@ public class Apartment
         return new Person(_tenant); //copy new for avoid aliasing. 
     }
 
+    /**
+     * Gets the tenant object itself (no copy is made - callers must not change it)
+     * @return the tenant renting the apartment
+     */
+    Person getTenantNoCopy(){
+        return _tenant;
+    }
+
     /**
      * Gets the rental start date
      * @return  the rental start date
      */
     public Date getRentalStartDate(){
-        return new Date(_rentalStartDate); //copy new for avoid aliasing.   
+        return _rentalStartDate.toDate(); //copy new for avoid aliasing.
     }
 
     /**
@@ -132,7 +151,23 @@ public class Apartment
      * @return    the rental end date
      */
     public Date getRentalEndDate(){
-        return new Date(_rentalEndDate);  //copy new for avoid aliasing.    
+        return _rentalEndDate.toDate();  //copy new for avoid aliasing.
+    }
+
+    /**
+     * Gets the day number of the rental start date (no copy is made)
+     * @return the day number of the rental start date
+     */
+    int getRentalStartDayNumber(){
+        return _rentalStartDate.toEpochDay();
+    }
+
+    /**
+     * Gets the day number of the rental end date (no copy is made)
+     * @return the day number of the rental end date
+     */
+    int getRentalEndDayNumber(){
+        return _rentalEndDate.toEpochDay();
     }
 
     /**
@@ -140,8 +175,14 @@ public class Apartment
      * @param noOfRooms new number of rooms
      */
     public void setNoOfRooms(int num){
+        if(_listeners != null){ //tell the listeners about the change, accepted or not.
+            ApartmentEvent event = newEvent(ApartmentEvent.Type.SET_NO_OF_ROOMS,num > INVALID,null);
+            event.setNewNoOfRooms(num);
+            fireAttempted(event);
+        }
         if(num > INVALID){
             _noOfRooms = num; //if valid change,if invalid dont do anything.
+            fireChanged();
         }
     }
 
@@ -150,8 +191,14 @@ public class Apartment
      * @param area apartment's new area
      */
     public void setArea(double area){
+        if(_listeners != null){ //tell the listeners about the change, accepted or not.
+            ApartmentEvent event = newEvent(ApartmentEvent.Type.SET_AREA,area > INVALID,null);
+            event.setNewArea(area);
+            fireAttempted(event);
+        }
         if(area > INVALID){
-            _area = area;  //if valid change,if invalid dont do anything.  
+            _area = area;  //if valid change,if invalid dont do anything.
+            fireChanged();
         }
     }
 
@@ -160,8 +207,14 @@ public class Apartment
      * @param  price apartment's new price
      */
     public void setPrice(double price){
+        if(_listeners != null){ //tell the listeners about the change, accepted or not.
+            ApartmentEvent event = newEvent(ApartmentEvent.Type.SET_PRICE,price > INVALID,null);
+            event.setNewPrice(price);
+            fireAttempted(event);
+        }
         if(price > INVALID){
             _price = price; //if valid change,if invalid dont do anything.
+            fireChanged();
         }
     }
 
@@ -170,7 +223,14 @@ public class Apartment
      * @param  tenant apartment's new tenant
      */
     public void setTenant(Person p){
-        _tenant = new Person(p); // create new object and copy to avoid aliasing.
+        Person tenant = new Person(p); // create new object and copy to avoid aliasing.
+        if(_listeners != null){ //tell the listeners about the change.
+            ApartmentEvent event = newEvent(ApartmentEvent.Type.SET_TENANT,true,null);
+            event.setNewTenant(tenant);
+            fireAttempted(event);
+        }
+        _tenant = tenant;
+        fireChanged();
     }
 
     /**
@@ -179,9 +239,16 @@ public class Apartment
      * @param  rentalStartDate apartment's new rental start date
      */
     public void setRentalStartDate(Date d){
+        if(_listeners != null){ //tell the listeners about the change, accepted or not.
+            ApartmentEvent event = newEvent(ApartmentEvent.Type.SET_RENTAL_START_DATE,
+                d.toEpochDay() < _rentalEndDate.toEpochDay(),null);
+            event.setNewRentalStartDate(ImmutableDate.valueOf(d));
+            fireAttempted(event);
+        }
         //if the date of d before the end of the rent meaning is valid.
-        if(d.before(_rentalEndDate)){
-            _rentalStartDate = new Date(d);// create new object and copy to avoid aliasing.
+        if(d.toEpochDay() < _rentalEndDate.toEpochDay()){
+            _rentalStartDate = ImmutableDate.valueOf(d);// immutable value, no aliasing with d.
+            fireChanged();
         }
         //else meaning is equals or after(invalid dont change).
     }
@@ -192,9 +259,16 @@ public class Apartment
      * @param  rentalEndDate apartment's new rental end date
      */
     public void setRentalEndDate(Date d){
+        if(_listeners != null){ //tell the listeners about the change, accepted or not.
+            ApartmentEvent event = newEvent(ApartmentEvent.Type.SET_RENTAL_END_DATE,
+                d.toEpochDay() > _rentalStartDate.toEpochDay(),null);
+            event.setNewRentalEndDate(ImmutableDate.valueOf(d));
+            fireAttempted(event);
+        }
         //if the d date is after the start meaning is valid.
-        if(d.after(_rentalStartDate)){
-            _rentalEndDate = new Date(d); // create new object and copy to avoid aliasing. 
+        if(d.toEpochDay() > _rentalStartDate.toEpochDay()){
+            _rentalEndDate = ImmutableDate.valueOf(d); // immutable value, no aliasing with d.
+            fireChanged();
         }
         //if its not after its equals or before then invalid ,dont change.
     }
@@ -204,12 +278,24 @@ public class Apartment
      * @return   a String that represents this Apartment
      */
     public String toString(){
-        //apartmentString- build the  String that represents this Apartment
-        String apartmentString ="Number of rooms: "+_noOfRooms+"\n"+"Area: "+_area+"\n"+
-            "Price: "+_price+" NIS"+"\n"+"Tenant name: "+_tenant.getName()+"\n"+
-            "Rental start date: "+_rentalStartDate.toString()+"\n"+"Rental end date: "+
-            _rentalEndDate.toString();
-        return apartmentString; //Returns a String that represents this Apartment
+        return appendTo(new StringBuilder(128)).toString(); //Returns a String that represents this Apartment
+    }
+
+    /**
+     * Appends this Apartment to a StringBuilder, in the same format as toString,
+     * without creating Strings for the fields or the dates
+     * @param sb the StringBuilder to append to
+     * @return sb, for chaining
+     */
+    public StringBuilder appendTo(StringBuilder sb){
+        sb.append("Number of rooms: ").append(_noOfRooms).append('\n');
+        sb.append("Area: ").append(_area).append('\n');
+        sb.append("Price: ").append(_price).append(" NIS").append('\n');
+        sb.append("Tenant name: ").append(_tenant.getName()).append('\n');
+        sb.append("Rental start date: ");
+        _rentalStartDate.appendTo(sb).append('\n');
+        sb.append("Rental end date: ");
+        return _rentalEndDate.appendTo(sb);
     }
 
     /**
@@ -246,15 +332,54 @@ public class Apartment
         return true;
     }
 
+    /**
+     * Checks if this apartment equals another object (same as equals(Apartment) for apartments)
+     * @param obj another object
+     * @return true if obj is an Apartment with all the same attributes
+     */
+    public boolean equals(Object obj){
+        if(!(obj instanceof Apartment)){ //also false for null.
+            return false;
+        }
+        return equals((Apartment)obj);
+    }
+
+    /**
+     * Returns a hash code for this apartment, computed from all the attributes used by equals.
+     * Changing the apartment changes the hash code, so an apartment must not be changed
+     * while it is a key in a hashed collection.
+     * @return the hash code of this apartment
+     */
+    public int hashCode(){
+        int hash = _noOfRooms;
+        hash = 31*hash + Double.hashCode(_area);
+        hash = 31*hash + Double.hashCode(_price);
+        hash = 31*hash + _tenant.hashCode();
+        hash = 31*hash + _rentalStartDate.toEpochDay();
+        hash = 31*hash + _rentalEndDate.toEpochDay();
+        return hash;
+    }
+
     /**
      * Extends the rental period by additional years(only if the years value is positive)
      * @param  years  the number of years to extend the lease
      */
     public void extendRentalPeriod(int years){
+        ImmutableDate newEnd = null; //built only if the extension is accepted.
         if(years > INVALID){ //if the years are not negative.
-            _rentalEndDate = new Date(_rentalEndDate.addYearsToDate(years));
-            //create new date with the value for avoid aliasing,call 
-            //addYearsToDate method from Date class it will handle edge cases of dates.
+            newEnd = _rentalEndDate.addYearsToDate(years);
+            //addYearsToDate will handle edge cases of dates (same as Date class).
+        }
+        if(_listeners != null){ //tell the listeners about the change, accepted or not.
+            ApartmentEvent event = newEvent(ApartmentEvent.Type.EXTEND_RENTAL_PERIOD,newEnd != null,null);
+            if(newEnd != null){ //a rejected extension keeps the old end date as the new one.
+                event.setNewRentalEndDate(newEnd);
+            }
+            fireAttempted(event);
+        }
+        if(newEnd != null){
+            _rentalEndDate = newEnd;
+            fireChanged();
         }
         //else negative dont change.
     }
@@ -267,10 +392,10 @@ public class Apartment
      * @return the number of days left between a given date and the end of rental date
      */
     public int daysLeft(Date d){
-        if(d.after(_rentalEndDate)){//if the date of d is after the end of the rental return-1.
+        if(d.toEpochDay() > _rentalEndDate.toEpochDay()){//if the date of d is after the end of the rental return-1.
             return -1;
         }
-        return d.difference(_rentalEndDate); //using difference method in Date class.
+        return _rentalEndDate.toEpochDay() - d.toEpochDay(); //days between d and the end.
         //if the date of d is before or equals the end of the rental return the days left.
     }
 
@@ -285,27 +410,148 @@ public class Apartment
      *  @return   true if the tenant has been changed
      */
     public boolean changeTenant(Date startDate, Person p, double price){
-        if(p.compareTo(_tenant) != -1){
-            return false; //if the new person older or equals than this then its invalid    
-        }
-        if(_price > price){
-            return false; //if the new price smaller than the current price return false.
+        if(!Metrics.isTimingEnabled()){
+            return reportTenantChange(applyTenantChange(startDate,p,price));
         }
-        if(startDate.after(_rentalEndDate) || startDate.equals(_rentalEndDate)){
+        long start = System.nanoTime();
+        boolean changed = reportTenantChange(applyTenantChange(startDate,p,price));
+        Metrics.recordLatency(ApartmentMetrics.Operation.CHANGE_TENANT,System.nanoTime() - start);
+        return changed;
+    }
+
+    /**
+     * Counts a rejected tenant change in the metrics
+     * @return true if the change was applied
+     */
+    private static boolean reportTenantChange(TenantChangeStatus status){
+        if(status != TenantChangeStatus.ELIGIBLE){
+            Metrics.tenantChangeRejected(status);
             return false;
-            //if the new date is after the end of this date or equals return false.
         }
-        if( startDate.difference(_rentalEndDate) > 90){
-            return false; //if there more than 90 days left to the correct tenant then false.    
+        return true;
+    }
+
+    /**
+     * Does the work of changeTenant (which may time it and counts the rejections).
+     * TenantChangeBatch calls it directly and counts the rejections itself.
+     * @return ELIGIBLE if the tenant has been changed, otherwise the rule that rejected it
+     */
+    TenantChangeStatus applyTenantChange(Date startDate, Person p, double price){
+        TenantChangeStatus status = checkTenantChange(startDate,p,price);
+        if(_listeners != null){ //tell the listeners about the change, accepted or not.
+            ApartmentEvent event = newEvent(ApartmentEvent.Type.CHANGE_TENANT,status == TenantChangeStatus.ELIGIBLE,status);
+            ImmutableDate start = ImmutableDate.valueOf(startDate);
+            event.setNewPrice(price);
+            event.setNewTenant(p);
+            event.setNewRentalStartDate(start);
+            event.setNewRentalEndDate(start.addYearsToDate(1));
+            fireAttempted(event);
+        }
+        if(status != TenantChangeStatus.ELIGIBLE){
+            return status; //one of the rules rejected the change.
         }
         _price = price;
         _tenant = new Person(p); //copy new for avoid aliasing.
-        _rentalStartDate = new Date(startDate); //copy new avoid aliasing.
-        _rentalEndDate = new Date(_rentalStartDate.addYearsToDate(1));
+        _rentalStartDate = ImmutableDate.valueOf(startDate); //immutable value, no aliasing.
+        _rentalEndDate = _rentalStartDate.addYearsToDate(1);
         //the end date is the same as the starting date except add 1 year also take care 
         //to edge cases in addYearsToDate method in date class.
-        return true;
+        fireChanged();
+        return status;
         //if the new person younger and the price is equal or bigger than the current and
         //there equals to less than 90 days left than return true.
     }
+
+    /**
+     *  Checks if the apartment's tenant can be replaced, without changing anything
+     *  (the same rules as changeTenant)
+     *  @param  startDate a new rental start date
+     *  @param  p a new tenant
+     *  @param price a new price
+     *  @return   ELIGIBLE if changeTenant would change the tenant, otherwise the rule that rejects it
+     */
+    public TenantChangeStatus checkTenantChange(Date startDate, Person p, double price){
+        if(p.compareTo(_tenant) != -1){
+            return TenantChangeStatus.NOT_YOUNGER; //if the new person older or equals than this then its invalid
+        }
+        if(_price > price){
+            return TenantChangeStatus.PRICE_TOO_LOW; //if the new price smaller than the current price.
+        }
+        if(startDate.toEpochDay() >= _rentalEndDate.toEpochDay()){
+            return TenantChangeStatus.START_NOT_BEFORE_END;
+            //if the new date is after the end of this date or equals.
+        }
+        if(_rentalEndDate.toEpochDay() - startDate.toEpochDay() > MAX_DAYS_LEFT_TO_CHANGE){
+            return TenantChangeStatus.TOO_EARLY; //if there more than 90 days left to the correct tenant.
+        }
+        return TenantChangeStatus.ELIGIBLE;
+    }
+
+    /**
+     * Adds a listener that will be told about every change to this apartment
+     * (listeners are not copied by the copy constructor)
+     * @param listener the listener to add
+     */
+    public void addApartmentListener(ApartmentListener listener){
+        if(_listeners == null){ //create the list only when needed.
+            _listeners = new ArrayList<ApartmentListener>();
+        }
+        _listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener that was added with addApartmentListener
+     * @param listener the listener to remove
+     */
+    public void removeApartmentListener(ApartmentListener listener){
+        if(_listeners != null){
+            _listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Creates an event with the current values as the old values (called only when there are listeners)
+     */
+    private ApartmentEvent newEvent(ApartmentEvent.Type type, boolean accepted, TenantChangeStatus status){
+        return new ApartmentEvent(this,type,accepted,status,_tenant,_rentalStartDate,_rentalEndDate);
+    }
+
+    /**
+     * Gives an event to all the listeners
+     */
+    private void fireAttempted(ApartmentEvent event){
+        for(int i = 0; i < _listeners.size(); i++){
+            _listeners.get(i).mutationAttempted(event);
+        }
+    }
+
+    /**
+     * Sets all the values of the apartment at once, without any checks, and tells the
+     * listeners it changed (used to rebuild an apartment from a journal)
+     * @param tenant the new tenant (used as is, not copied), or null to keep the current one
+     */
+    void restore(int noOfRooms, double area, double price, Person tenant,
+        ImmutableDate rentalStartDate, ImmutableDate rentalEndDate){
+        _noOfRooms = noOfRooms;
+        _area = area;
+        _price = price;
+        if(tenant != null){
+            _tenant = tenant;
+        }
+        _rentalStartDate = rentalStartDate;
+        _rentalEndDate = rentalEndDate;
+        fireChanged();
+    }
+
+    /**
+     * Tells all the listeners that this apartment changed
+     */
+    private void fireChanged(){
+        if(_listeners == null){ //no listeners, nothing to do.
+            return;
+        }
+        for(int i = 0; i < _listeners.size(); i++){
+            _listeners.get(i).apartmentChanged(this);
+        }
+    }
 }
@@ -0,0 +1,99 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A compact binary format for Apartment records, read from and written to ByteBuffers.
+ *
+ * A record is a fixed-width part followed by the tenant's name:
+ * <pre>
+ *   short   number of rooms
+ *   double  area
+ *   double  price
+ *   int     rental start date (day number, see Date.calculateDate)
+ *   int     rental end date (day number)
+ *   int     tenant's date of birth (day number)
+ *   int     tenant's id (the 9 digits as a number)
+ *   short   length of the tenant's name in bytes
+ *   byte[]  tenant's name (UTF-8)
+ * </pre>
+ * Numbers use the byte order of the buffer. Reading a record gives an apartment that
+ * equals (Apartment.equals) the one that was written.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public final class ApartmentCodec
+{
+    /** Size in bytes of the fixed-width part of a record (everything but the name bytes). */
+    public static final int FIXED_SIZE = 2 + 8 + 8 + 4 + 4 + 4 + 4 + 2;
+
+    /**
+     * No instances - all the methods are static.
+     */
+    private ApartmentCodec()
+    {
+    }
+
+    /**
+     * Gets the number of bytes the record of an apartment takes
+     * @param a an apartment
+     * @return the size of its record in bytes
+     */
+    public static int encodedSize(Apartment a){
+        return FIXED_SIZE + a.getTenantNoCopy().getName().getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Writes the record of an apartment at the buffer's position (and moves the position)
+     * @param a the apartment to write
+     * @param buf the buffer to write to
+     * @throws IllegalArgumentException if the apartment can't be written in this format
+     * (more than 32767 rooms, an id that is not 9 digits, or a name longer than 32767 bytes)
+     * @throws java.nio.BufferOverflowException if the buffer doesn't have room for the record
+     */
+    public static void write(Apartment a, ByteBuffer buf){
+        Person tenant = a.getTenantNoCopy();
+        if(a.getNoOfRooms() > Short.MAX_VALUE){
+            throw new IllegalArgumentException("Too many rooms: "+a.getNoOfRooms());
+        }
+        int id = Person.packId(tenant.getId());
+        if(id < 0){
+            throw new IllegalArgumentException("Id is not 9 digits: "+tenant.getId());
+        }
+        byte[] name = tenant.getName().getBytes(StandardCharsets.UTF_8);
+        if(name.length > Short.MAX_VALUE){
+            throw new IllegalArgumentException("Name is too long: "+name.length+" bytes");
+        }
+        buf.putShort((short)a.getNoOfRooms());
+        buf.putDouble(a.getArea());
+        buf.putDouble(a.getPrice());
+        buf.putInt(a.getRentalStartDayNumber());
+        buf.putInt(a.getRentalEndDayNumber());
+        buf.putInt(tenant.getDateOfBirth().toEpochDay());
+        buf.putInt(id);
+        buf.putShort((short)name.length);
+        buf.put(name);
+    }
+
+    /**
+     * Reads a record at the buffer's position (and moves the position)
+     * @param buf the buffer to read from
+     * @return a new Apartment with the values of the record
+     * @throws java.nio.BufferUnderflowException if the buffer doesn't hold a whole record
+     */
+    public static Apartment read(ByteBuffer buf){
+        int noOfRooms = buf.getShort();
+        double area = buf.getDouble();
+        double price = buf.getDouble();
+        int start = Date.dateOfDayNumber(buf.getInt()); //packed as yyyymmdd.
+        int end = Date.dateOfDayNumber(buf.getInt());
+        int dateOfBirth = Date.dateOfDayNumber(buf.getInt());
+        String id = Person.unpackId(buf.getInt());
+        byte[] nameBytes = new byte[buf.getShort()];
+        buf.get(nameBytes);
+        Person tenant = new Person(new String(nameBytes,StandardCharsets.UTF_8),
+            dateOfBirth%100,(dateOfBirth/100)%100,dateOfBirth/10000,id);
+        return new Apartment(noOfRooms,area,price,tenant,
+            start%100,(start/100)%100,start/10000,end%100,(end/100)%100,end/10000);
+    }
+}
@@ -0,0 +1,287 @@
+/**
+ * One attempt to change an Apartment - accepted or rejected - with the values of the
+ * apartment before it and the values it asked for.
+ *
+ * The new values are what the apartment holds after the change when it was accepted,
+ * and what the change asked for when it was rejected (for example the negative price
+ * given to setPrice). Values a change doesn't touch are the same in old and new. A rejected
+ * extendRentalPeriod (negative years) asks for no date, so its new end date is the old one.
+ *
+ * Events are given to ApartmentListener.mutationAttempted and read back from an
+ * ApartmentJournal. The persons of an event are not copied - don't change them.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public final class ApartmentEvent
+{
+    /**
+     * The kinds of changes.
+     */
+    public enum Type
+    {
+        SET_NO_OF_ROOMS,
+        SET_AREA,
+        SET_PRICE,
+        SET_TENANT,
+        SET_RENTAL_START_DATE,
+        SET_RENTAL_END_DATE,
+        EXTEND_RENTAL_PERIOD,
+        CHANGE_TENANT
+    }
+
+    private final Apartment _apartment; // the apartment (null if unknown when read back)
+    private final Type _type;
+    private final boolean _accepted;
+    private final TenantChangeStatus _status; // result of the checks of changeTenant (null for other types)
+    private final int _oldNoOfRooms;
+    private int _newNoOfRooms;
+    private final double _oldArea;
+    private double _newArea;
+    private final double _oldPrice;
+    private double _newPrice;
+    private final Person _oldTenant;
+    private Person _newTenant;
+    private final ImmutableDate _oldRentalStartDate;
+    private ImmutableDate _newRentalStartDate;
+    private final ImmutableDate _oldRentalEndDate;
+    private ImmutableDate _newRentalEndDate;
+
+    /**
+     * Creates an event with the apartment's current values as both the old and the new values
+     * (used by Apartment, which then sets the new values it asked for)
+     * @param apartment the apartment
+     * @param type the kind of change
+     * @param accepted true if the change will be applied
+     * @param status the result of the changeTenant checks (null for other types)
+     * @param tenant the apartment's tenant object
+     * @param rentalStartDate the apartment's rental start date
+     * @param rentalEndDate the apartment's rental end date
+     */
+    ApartmentEvent(Apartment apartment, Type type, boolean accepted, TenantChangeStatus status,
+        Person tenant, ImmutableDate rentalStartDate, ImmutableDate rentalEndDate)
+    {
+        _apartment = apartment;
+        _type = type;
+        _accepted = accepted;
+        _status = status;
+        _oldNoOfRooms = _newNoOfRooms = apartment.getNoOfRooms();
+        _oldArea = _newArea = apartment.getArea();
+        _oldPrice = _newPrice = apartment.getPrice();
+        _oldTenant = _newTenant = tenant;
+        _oldRentalStartDate = _newRentalStartDate = rentalStartDate;
+        _oldRentalEndDate = _newRentalEndDate = rentalEndDate;
+    }
+
+    /**
+     * Creates an event with all its values (used when reading a journal)
+     */
+    ApartmentEvent(Apartment apartment, Type type, boolean accepted, TenantChangeStatus status,
+        int oldNoOfRooms, int newNoOfRooms, double oldArea, double newArea, double oldPrice, double newPrice,
+        Person oldTenant, Person newTenant, ImmutableDate oldRentalStartDate, ImmutableDate newRentalStartDate,
+        ImmutableDate oldRentalEndDate, ImmutableDate newRentalEndDate)
+    {
+        _apartment = apartment;
+        _type = type;
+        _accepted = accepted;
+        _status = status;
+        _oldNoOfRooms = oldNoOfRooms;
+        _newNoOfRooms = newNoOfRooms;
+        _oldArea = oldArea;
+        _newArea = newArea;
+        _oldPrice = oldPrice;
+        _newPrice = newPrice;
+        _oldTenant = oldTenant;
+        _newTenant = newTenant;
+        _oldRentalStartDate = oldRentalStartDate;
+        _newRentalStartDate = newRentalStartDate;
+        _oldRentalEndDate = oldRentalEndDate;
+        _newRentalEndDate = newRentalEndDate;
+    }
+
+    /**
+     * Gets the apartment that was changed
+     * @return the apartment (null if the event was read from a journal without it)
+     */
+    public Apartment getApartment(){
+        return _apartment;
+    }
+
+    /**
+     * Gets the kind of change
+     * @return the kind of change
+     */
+    public Type getType(){
+        return _type;
+    }
+
+    /**
+     * Checks if the change was accepted
+     * @return true if the apartment was changed, false if the change was rejected
+     */
+    public boolean isAccepted(){
+        return _accepted;
+    }
+
+    /**
+     * Gets the result of the changeTenant checks
+     * @return ELIGIBLE or the rule that rejected the change (null if the type is not CHANGE_TENANT)
+     */
+    public TenantChangeStatus getStatus(){
+        return _status;
+    }
+
+    /**
+     * Gets the number of rooms before the change
+     * @return the number of rooms before the change
+     */
+    public int getOldNoOfRooms(){
+        return _oldNoOfRooms;
+    }
+
+    /**
+     * Gets the number of rooms after the change (or the value asked for, if rejected)
+     * @return the number of rooms after the change (or the value asked for, if rejected)
+     */
+    public int getNewNoOfRooms(){
+        return _newNoOfRooms;
+    }
+
+    /**
+     * Gets the area before the change
+     * @return the area before the change
+     */
+    public double getOldArea(){
+        return _oldArea;
+    }
+
+    /**
+     * Gets the area after the change (or the value asked for, if rejected)
+     * @return the area after the change (or the value asked for, if rejected)
+     */
+    public double getNewArea(){
+        return _newArea;
+    }
+
+    /**
+     * Gets the price before the change
+     * @return the price before the change
+     */
+    public double getOldPrice(){
+        return _oldPrice;
+    }
+
+    /**
+     * Gets the price after the change (or the value asked for, if rejected)
+     * @return the price after the change (or the value asked for, if rejected)
+     */
+    public double getNewPrice(){
+        return _newPrice;
+    }
+
+    /**
+     * Gets the tenant before the change
+     * @return the tenant before the change
+     */
+    public Person getOldTenant(){
+        return _oldTenant;
+    }
+
+    /**
+     * Gets the tenant after the change (or the value asked for, if rejected)
+     * @return the tenant after the change (or the value asked for, if rejected)
+     */
+    public Person getNewTenant(){
+        return _newTenant;
+    }
+
+    /**
+     * Gets the rental start date before the change
+     * @return the rental start date before the change
+     */
+    public ImmutableDate getOldRentalStartDate(){
+        return _oldRentalStartDate;
+    }
+
+    /**
+     * Gets the rental start date after the change (or the value asked for, if rejected)
+     * @return the rental start date after the change (or the value asked for, if rejected)
+     */
+    public ImmutableDate getNewRentalStartDate(){
+        return _newRentalStartDate;
+    }
+
+    /**
+     * Gets the rental end date before the change
+     * @return the rental end date before the change
+     */
+    public ImmutableDate getOldRentalEndDate(){
+        return _oldRentalEndDate;
+    }
+
+    /**
+     * Gets the rental end date after the change (or the value asked for, if rejected)
+     * @return the rental end date after the change (or the value asked for, if rejected)
+     */
+    public ImmutableDate getNewRentalEndDate(){
+        return _newRentalEndDate;
+    }
+
+    /**
+     * Returns a String that represents this event
+     * @return a String with the type, whether it was accepted and the values that changed
+     */
+    public String toString(){
+        StringBuilder sb = new StringBuilder(96);
+        sb.append(_type).append(_accepted ? " accepted" : " rejected");
+        if(_status != null){
+            sb.append(" (").append(_status).append(')');
+        }
+        if(_oldNoOfRooms != _newNoOfRooms){
+            sb.append(" rooms: ").append(_oldNoOfRooms).append(" -> ").append(_newNoOfRooms);
+        }
+        if(_oldArea != _newArea){
+            sb.append(" area: ").append(_oldArea).append(" -> ").append(_newArea);
+        }
+        if(_oldPrice != _newPrice){
+            sb.append(" price: ").append(_oldPrice).append(" -> ").append(_newPrice);
+        }
+        if(_oldTenant != null && !_oldTenant.equals(_newTenant)){ //null when read back for types without tenants.
+            sb.append(" tenant: ").append(_oldTenant.getId()).append(" -> ").append(_newTenant.getId());
+        }
+        if(!_oldRentalStartDate.equals(_newRentalStartDate)){
+            sb.append(" start: ").append(_oldRentalStartDate).append(" -> ").append(_newRentalStartDate);
+        }
+        if(!_oldRentalEndDate.equals(_newRentalEndDate)){
+            sb.append(" end: ").append(_oldRentalEndDate).append(" -> ").append(_newRentalEndDate);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Sets the new values (used by Apartment before the event is given to the listeners)
+     */
+    void setNewNoOfRooms(int noOfRooms){
+        _newNoOfRooms = noOfRooms;
+    }
+
+    void setNewArea(double area){
+        _newArea = area;
+    }
+
+    void setNewPrice(double price){
+        _newPrice = price;
+    }
+
+    void setNewTenant(Person tenant){
+        _newTenant = tenant;
+    }
+
+    void setNewRentalStartDate(ImmutableDate d){
+        _newRentalStartDate = d;
+    }
+
+    void setNewRentalEndDate(ImmutableDate d){
+        _newRentalEndDate = d;
+    }
+}
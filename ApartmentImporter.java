@@ -0,0 +1,507 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Streams apartments from a line-oriented CSV feed.
+ *
+ * Every line is one apartment with 8 comma-separated fields (no quoting):
+ * <pre>
+ *   rooms,area,price,tenant name,tenant date of birth,tenant id,rental start date,rental end date
+ *   3,80.5,5000,Dana Levi,03/04/1990,012345678,01/02/2020,01/02/2021
+ * </pre>
+ * Dates are day/month/year. Spaces around the numbers, dates and id are ignored; the name
+ * is taken as it is (like the Person constructor, only an empty name gets the default).
+ * Empty lines are skipped.
+ *
+ * The values go through the Person and Apartment constructors, so exactly the same
+ * default rules apply (rooms, area or price 0 or negative, empty name, id that is not
+ * 9 characters, invalid dates, end date not after the start date). The ImportReport
+ * counts how many rows fell back to each default. A line with the wrong number of
+ * fields, or a number that can't be parsed or is not finite (NaN, Infinity, hex floats
+ * or a decimal too large for a double) is skipped and counted as malformed.
+ *
+ * Parsing and building run in a pipeline: a parser thread reads the feed and parses the
+ * numbers and dates straight from the characters (no regex, no String per field - only
+ * the name and id, which Person needs, become Strings) into batches of primitive
+ * values, while the calling thread builds the apartments and gives them to the sink.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public class ApartmentImporter
+{
+    private static final int FIELDS = 8; // fields in a line
+    private static final int BATCH_SIZE = 1024; // rows handed from the parser to the builder at once
+    private static final int QUEUE_BATCHES = 8; // batches waiting between the parser and the builder
+    private static final int CHUNK_SIZE = 1 << 16; // characters read from the feed at once
+    private static final int INVALID = 0;
+    private static final int ID_LENGTH = 9;
+    private static final int MAX_FAST_DIGITS = 15; // decimal digits that fit a double exactly
+    private static final double[] POWERS_OF_TEN = {1e0,1e1,1e2,1e3,1e4,1e5,1e6,1e7,1e8,1e9,1e10,
+        1e11,1e12,1e13,1e14,1e15,1e16,1e17,1e18,1e19,1e20,1e21,1e22};
+
+    /**
+     * Counts of an import - rows read, malformed rows and rows that used each default.
+     */
+    public static class ImportReport
+    {
+        private long _rows; // apartments imported
+        private long _malformedRows; // lines skipped
+        private long _roomDefaults;
+        private long _areaDefaults;
+        private long _priceDefaults;
+        private long _nameDefaults;
+        private long _idDefaults;
+        private long _dateOfBirthDefaults;
+        private long _startDateDefaults;
+        private long _endDateDefaults;
+        private long _endDateAdjusted; // end date not after the start date, moved by the Apartment constructor
+
+        /** @return the number of apartments imported */
+        public long getRows(){
+            return _rows;
+        }
+
+        /** @return the number of lines skipped because they could not be parsed */
+        public long getMalformedRows(){
+            return _malformedRows;
+        }
+
+        /** @return the number of rows that used the default number of rooms */
+        public long getRoomDefaults(){
+            return _roomDefaults;
+        }
+
+        /** @return the number of rows that used the default area */
+        public long getAreaDefaults(){
+            return _areaDefaults;
+        }
+
+        /** @return the number of rows that used the default price */
+        public long getPriceDefaults(){
+            return _priceDefaults;
+        }
+
+        /** @return the number of rows that used the default tenant name */
+        public long getNameDefaults(){
+            return _nameDefaults;
+        }
+
+        /** @return the number of rows that used the default tenant id */
+        public long getIdDefaults(){
+            return _idDefaults;
+        }
+
+        /** @return the number of rows that used the default date (01/01/2000) as date of birth */
+        public long getDateOfBirthDefaults(){
+            return _dateOfBirthDefaults;
+        }
+
+        /** @return the number of rows that used the default date as rental start date */
+        public long getStartDateDefaults(){
+            return _startDateDefaults;
+        }
+
+        /** @return the number of rows that used the default date as rental end date */
+        public long getEndDateDefaults(){
+            return _endDateDefaults;
+        }
+
+        /** @return the number of rows whose end date was not after the start date (and was moved) */
+        public long getEndDateAdjusted(){
+            return _endDateAdjusted;
+        }
+
+        /**
+         * Returns a String that represents this report
+         * @return a String with all the counts
+         */
+        public String toString(){
+            return "Rows: "+_rows+"\n"+"Malformed rows: "+_malformedRows+"\n"
+                +"Default rooms: "+_roomDefaults+"\n"+"Default area: "+_areaDefaults+"\n"
+                +"Default price: "+_priceDefaults+"\n"+"Default name: "+_nameDefaults+"\n"
+                +"Default id: "+_idDefaults+"\n"+"Default date of birth: "+_dateOfBirthDefaults+"\n"
+                +"Default start date: "+_startDateDefaults+"\n"+"Default end date: "+_endDateDefaults+"\n"
+                +"End date adjusted: "+_endDateAdjusted;
+        }
+    }
+
+    /**
+     * No instances - all the methods are static.
+     */
+    private ApartmentImporter()
+    {
+    }
+
+    /**
+     * Imports all the apartments of a feed
+     * @param in the feed (read until its end, not closed)
+     * @param sink gets every imported apartment, in the order of the feed (called on this thread)
+     * @return the counts of the import
+     * @throws IOException if reading the feed fails
+     */
+    public static ImportReport importFrom(Reader in, Consumer<Apartment> sink) throws IOException{
+        BlockingQueue<Batch> queue = new ArrayBlockingQueue<Batch>(QUEUE_BATCHES);
+        Parser parser = new Parser(in,queue);
+        Thread thread = new Thread(parser,"apartment-import-parser");
+        thread.setDaemon(true);
+        thread.start();
+        ImportReport report = new ImportReport();
+        try{
+            while(true){
+                Batch batch = queue.take();
+                report._malformedRows += batch._malformed;
+                if(batch._last){ //end of the feed (or a read error).
+                    break;
+                }
+                for(int i = 0; i < batch._size; i++){
+                    sink.accept(build(batch,i,report));
+                }
+            }
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted",e);
+        }
+        finally{
+            thread.interrupt(); //stop the parser if the sink failed.
+        }
+        if(parser._error != null){
+            throw parser._error;
+        }
+        return report;
+    }
+
+    /**
+     * Builds the apartment of a row (with the Person and Apartment constructors) and counts its defaults
+     */
+    private static Apartment build(Batch b, int i, ImportReport report){
+        String name = b._name[i];
+        if(name.isEmpty()){
+            name = ""; //the Person constructor checks name == "", so use the literal.
+            report._nameDefaults++;
+        }
+        if(b._id[i].length() != ID_LENGTH){
+            report._idDefaults++;
+        }
+        if(b._rooms[i] <= INVALID){
+            report._roomDefaults++;
+        }
+        if(b._area[i] <= INVALID){
+            report._areaDefaults++;
+        }
+        if(b._price[i] <= INVALID){
+            report._priceDefaults++;
+        }
+        if(!Date.validDateValue(b._birthDay[i],b._birthMonth[i],b._birthYear[i])){
+            report._dateOfBirthDefaults++;
+        }
+        ImmutableDate start = ImmutableDate.valueOf(b._startDay[i],b._startMonth[i],b._startYear[i]);
+        ImmutableDate end = ImmutableDate.valueOf(b._endDay[i],b._endMonth[i],b._endYear[i]);
+        if(!Date.validDateValue(b._startDay[i],b._startMonth[i],b._startYear[i])){
+            report._startDateDefaults++;
+        }
+        if(!Date.validDateValue(b._endDay[i],b._endMonth[i],b._endYear[i])){
+            report._endDateDefaults++;
+        }
+        if(!end.after(start)){
+            report._endDateAdjusted++;
+        }
+        report._rows++;
+        Person tenant = new Person(name,b._birthDay[i],b._birthMonth[i],b._birthYear[i],b._id[i]);
+        return new Apartment(b._rooms[i],b._area[i],b._price[i],tenant,
+            b._startDay[i],b._startMonth[i],b._startYear[i],b._endDay[i],b._endMonth[i],b._endYear[i]);
+    }
+
+    /**
+     * Parsed rows handed from the parser to the builder, one primitive array per field.
+     */
+    private static class Batch
+    {
+        private int _size; // rows in the batch
+        private int _malformed; // lines skipped while filling the batch
+        private boolean _last; // true for the final (empty) batch
+        private final int[] _rooms = new int[BATCH_SIZE];
+        private final double[] _area = new double[BATCH_SIZE];
+        private final double[] _price = new double[BATCH_SIZE];
+        private final String[] _name = new String[BATCH_SIZE];
+        private final String[] _id = new String[BATCH_SIZE];
+        private final int[] _birthDay = new int[BATCH_SIZE];
+        private final int[] _birthMonth = new int[BATCH_SIZE];
+        private final int[] _birthYear = new int[BATCH_SIZE];
+        private final int[] _startDay = new int[BATCH_SIZE];
+        private final int[] _startMonth = new int[BATCH_SIZE];
+        private final int[] _startYear = new int[BATCH_SIZE];
+        private final int[] _endDay = new int[BATCH_SIZE];
+        private final int[] _endMonth = new int[BATCH_SIZE];
+        private final int[] _endYear = new int[BATCH_SIZE];
+    }
+
+    /**
+     * Reads the feed and parses it into batches (runs on the parser thread).
+     */
+    private static class Parser implements Runnable
+    {
+        private final Reader _in;
+        private final BlockingQueue<Batch> _queue;
+        private IOException _error; // read error, rethrown by importFrom
+        private Batch _batch = new Batch(); // batch being filled
+        private char[] _line = new char[256]; // current line (grows for long lines)
+        private int[] _fieldStart = new int[FIELDS + 1]; // start of every field (and end of the line + 1)
+        private boolean _bad; // set when a number in the current line can't be parsed
+        private int[] _date = new int[3]; // day, month, year of the last parsed date
+
+        private Parser(Reader in, BlockingQueue<Batch> queue)
+        {
+            _in = in;
+            _queue = queue;
+        }
+
+        public void run(){
+            try{
+                try{
+                    char[] chunk = new char[CHUNK_SIZE];
+                    int length = 0;
+                    int read;
+                    while((read = _in.read(chunk)) != -1){
+                        for(int i = 0; i < read; i++){
+                            char c = chunk[i];
+                            if(c == '\n'){
+                                parseLine(length);
+                                length = 0;
+                            }
+                            else if(c != '\r'){
+                                if(length == _line.length){ //long line, grow.
+                                    _line = Arrays.copyOf(_line,length*2);
+                                }
+                                _line[length++] = c;
+                            }
+                        }
+                    }
+                    parseLine(length); //last line without '\n'.
+                }
+                catch(IOException e){
+                    _error = e;
+                }
+                catch(RuntimeException e){ //should not happen, but never leave the builder waiting.
+                    _error = new IOException("Import failed",e);
+                }
+                if(_batch._size > 0){
+                    _queue.put(_batch);
+                    _batch = new Batch();
+                }
+                _batch._last = true; //tell the builder we are done.
+                _queue.put(_batch);
+            }
+            catch(InterruptedException e){
+                //the builder stopped, nothing more to do.
+            }
+        }
+
+        /**
+         * Parses the line in _line[0..length) into the batch
+         */
+        private void parseLine(int length) throws InterruptedException{
+            int fields = 0;
+            _fieldStart[0] = 0;
+            boolean blank = true;
+            for(int i = 0; i < length; i++){
+                char c = _line[i];
+                if(c == ','){
+                    fields++;
+                    if(fields == FIELDS){ //too many fields.
+                        _batch._malformed++;
+                        return;
+                    }
+                    _fieldStart[fields] = i + 1;
+                }
+                else if(c != ' ' && c != '\t'){
+                    blank = false;
+                }
+            }
+            if(blank && fields == 0){ //empty line.
+                return;
+            }
+            if(fields != FIELDS - 1){ //too few fields.
+                _batch._malformed++;
+                return;
+            }
+            _fieldStart[FIELDS] = length + 1;
+            Batch b = _batch;
+            int row = b._size;
+            _bad = false;
+            b._rooms[row] = parseInt(start(0),end(0));
+            b._area[row] = parseDouble(start(1),end(1));
+            b._price[row] = parseDouble(start(2),end(2));
+            b._name[row] = new String(_line,_fieldStart[3],_fieldStart[4] - 1 - _fieldStart[3]); //not trimmed.
+            parseDate(start(4),end(4));
+            b._birthDay[row] = _date[0];
+            b._birthMonth[row] = _date[1];
+            b._birthYear[row] = _date[2];
+            b._id[row] = new String(_line,start(5),end(5) - start(5));
+            parseDate(start(6),end(6));
+            b._startDay[row] = _date[0];
+            b._startMonth[row] = _date[1];
+            b._startYear[row] = _date[2];
+            parseDate(start(7),end(7));
+            b._endDay[row] = _date[0];
+            b._endMonth[row] = _date[1];
+            b._endYear[row] = _date[2];
+            if(_bad){ //a number could not be parsed - skip the line.
+                b._malformed++;
+                return;
+            }
+            b._size++;
+            if(b._size == BATCH_SIZE){ //batch is full, hand it to the builder.
+                _queue.put(b);
+                _batch = new Batch();
+            }
+        }
+
+        /**
+         * Gets the first character of a field, after leading spaces
+         */
+        private int start(int field){
+            int from = _fieldStart[field];
+            int to = _fieldStart[field + 1] - 1;
+            while(from < to && (_line[from] == ' ' || _line[from] == '\t')){
+                from++;
+            }
+            return from;
+        }
+
+        /**
+         * Gets the end (exclusive) of a field, before trailing spaces
+         */
+        private int end(int field){
+            int from = _fieldStart[field];
+            int to = _fieldStart[field + 1] - 1;
+            while(to > from && (_line[to - 1] == ' ' || _line[to - 1] == '\t')){
+                to--;
+            }
+            return to;
+        }
+
+        /**
+         * Parses an int from _line[from..to), sets _bad if it is not a number
+         */
+        private int parseInt(int from, int to){
+            boolean negative = false;
+            if(from < to && (_line[from] == '-' || _line[from] == '+')){
+                negative = _line[from] == '-';
+                from++;
+            }
+            if(from == to){ //no digits.
+                _bad = true;
+                return 0;
+            }
+            long value = 0;
+            for(int i = from; i < to; i++){
+                char c = _line[i];
+                if(c < '0' || c > '9' || value > Integer.MAX_VALUE){
+                    _bad = true;
+                    return 0;
+                }
+                value = value*10 + (c - '0');
+            }
+            if(value > Integer.MAX_VALUE){
+                _bad = true;
+                return 0;
+            }
+            return negative ? (int)-value : (int)value;
+        }
+
+        /**
+         * Parses a double from _line[from..to), sets _bad if it is not a finite decimal number.
+         * Plain decimals with up to 15 digits are computed directly (exactly as
+         * Double.parseDouble would); longer ones and exponents go to Double.parseDouble,
+         * but not the other forms it accepts (NaN, Infinity, hex floats, 'd'/'f' suffixes).
+         */
+        private double parseDouble(int from, int to){
+            int i = from;
+            boolean negative = false;
+            if(i < to && (_line[i] == '-' || _line[i] == '+')){
+                negative = _line[i] == '-';
+                i++;
+            }
+            long mantissa = 0;
+            int digits = 0;
+            int decimals = 0;
+            boolean point = false;
+            for(; i < to; i++){
+                char c = _line[i];
+                if(c >= '0' && c <= '9'){
+                    mantissa = mantissa*10 + (c - '0');
+                    digits++;
+                    if(point){
+                        decimals++;
+                    }
+                }
+                else if(c == '.' && !point){
+                    point = true;
+                }
+                else //exponent or something else.
+                {
+                    break;
+                }
+            }
+            if(i == to && digits > 0 && digits <= MAX_FAST_DIGITS){ //simple decimal number.
+                double value = mantissa / POWERS_OF_TEN[decimals];
+                return negative ? -value : value;
+            }
+            for(i = from; i < to; i++){ //only digits, point, sign and exponent.
+                char c = _line[i];
+                if((c < '0' || c > '9') && c != '.' && c != '-' && c != '+' && c != 'e' && c != 'E'){
+                    _bad = true;
+                    return 0;
+                }
+            }
+            try{
+                double value = Double.parseDouble(new String(_line,from,to - from)); //rare.
+                if(!Double.isFinite(value)){ //too large for a double.
+                    _bad = true;
+                    return 0;
+                }
+                return value;
+            }
+            catch(NumberFormatException e){
+                _bad = true;
+                return 0;
+            }
+        }
+
+        /**
+         * Parses a day/month/year date from _line[from..to) into _date, sets _bad if it can't
+         */
+        private void parseDate(int from, int to){
+            int firstSlash = -1;
+            int secondSlash = -1;
+            for(int i = from; i < to; i++){
+                if(_line[i] == '/'){
+                    if(firstSlash < 0){
+                        firstSlash = i;
+                    }
+                    else if(secondSlash < 0){
+                        secondSlash = i;
+                    }
+                    else //too many parts.
+                    {
+                        _bad = true;
+                        return;
+                    }
+                }
+            }
+            if(secondSlash < 0){
+                _bad = true;
+                return;
+            }
+            _date[0] = parseInt(from,firstSlash);
+            _date[1] = parseInt(firstSlash + 1,secondSlash);
+            _date[2] = parseInt(secondSlash + 1,to);
+        }
+    }
+}
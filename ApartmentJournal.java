@@ -0,0 +1,425 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * An append-only file of apartment changes - every change asked of a journaled apartment,
+ * accepted or rejected, with its old and new values (see ApartmentEvent).
+ *
+ * Events are written to a buffer in memory; the buffer is written to the file with one
+ * FileChannel write when it is full, on flush and on close (group commit), so writing an
+ * event doesn't touch the disk. Events still in the buffer are lost if the program stops
+ * without flush or close.
+ *
+ * Apartments are identified in the file by a key - the order in which they were added
+ * to the journal (0, 1, 2...). replay reads a journal and applies its accepted changes to
+ * a list of apartments in the same order, rebuilding their state. So that a removed
+ * apartment gets its old key when it is added again, the journal keeps the key of every
+ * apartment added since it was opened, and with it a reference to the apartment: removed
+ * apartments stay reachable until the journal is closed. A long-running process that
+ * journals many short-lived apartments should close and open the journal from time to time.
+ *
+ * A failed write does not throw from the apartment's setters: the journal stops recording
+ * (later events are dropped, since replay could not apply them without the lost ones) and
+ * keeps the IOException, which flush, force and close throw.
+ *
+ * File layout: a header (magic, version) followed by records:
+ * <pre>
+ *   int     size of the rest of the record in bytes
+ *   int     apartment key
+ *   byte    type (ApartmentEvent.Type ordinal)
+ *   byte    1 if accepted, 0 if rejected
+ *   byte    changeTenant status (TenantChangeStatus ordinal, -1 for other types)
+ *   int     old / new number of rooms
+ *   double  old / new area
+ *   double  old / new price
+ *   int     old / new rental start date (day number)
+ *   int     old / new rental end date (day number)
+ *   tenant  old / new tenant, only for SET_TENANT and CHANGE_TENANT:
+ *           int date of birth (day number), int + UTF-8 bytes of the id, int + UTF-8 bytes of the name
+ * </pre>
+ *
+ * Events are written by the thread that changes the apartment; writing is synchronized,
+ * so several threads may change different apartments of the same journal.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public class ApartmentJournal implements ApartmentListener, Closeable
+{
+    private static final int MAGIC = 0x41504A31; // "APJ1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int FIXED_SIZE = 4 + 4 + 1 + 1 + 1 + 2*4 + 2*8 + 2*8 + 2*4 + 2*4; // record without tenants
+    private static final int DEFFAULT_BUFFER_SIZE = 1 << 20; // bytes written together
+    private static final byte NO_STATUS = -1;
+
+    private final FileChannel _channel;
+    private final ByteBuffer _buffer; // events not written to the file yet
+    private IdentityHashMap<Apartment, Integer> _keys; // key of every apartment added since open (kept after remove)
+    private Set<Apartment> _active; // the apartments journaled now (not removed)
+    private long _eventCount; // events journaled since the journal was opened
+    private long _writeCount; // channel writes (batches) since the journal was opened
+    private IOException _failure; // the first write that failed (no events are recorded after it)
+
+    /**
+     * Private constructor - use open.
+     */
+    private ApartmentJournal(FileChannel channel, int bufferSize)
+    {
+        _channel = channel;
+        _buffer = ByteBuffer.allocateDirect(bufferSize);
+        _keys = new IdentityHashMap<Apartment, Integer>();
+        _active = Collections.newSetFromMap(new IdentityHashMap<Apartment, Boolean>());
+    }
+
+    /**
+     * Opens a journal file for appending (creates it if it doesn't exist)
+     * @param path the file
+     * @return the journal
+     * @throws IOException if the file can't be opened or is not a journal file
+     */
+    public static ApartmentJournal open(Path path) throws IOException{
+        return open(path,DEFFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Opens a journal file for appending (creates it if it doesn't exist)
+     * @param path the file
+     * @param bufferSize the number of bytes collected before they are written to the file
+     * @return the journal
+     * @throws IOException if the file can't be opened or is not a journal file
+     */
+    public static ApartmentJournal open(Path path, int bufferSize) throws IOException{
+        if(bufferSize < FIXED_SIZE){
+            throw new IllegalArgumentException("Invalid buffer size: "+bufferSize);
+        }
+        FileChannel channel = FileChannel.open(path,StandardOpenOption.CREATE,StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        try{
+            if(channel.size() == 0){ //new file, write the header.
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                writeFully(channel,header);
+            }
+            else
+            {
+                checkHeader(channel,path);
+            }
+            channel.position(channel.size());
+            return new ApartmentJournal(channel,bufferSize);
+        }
+        catch(IOException | RuntimeException e){
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts journaling the changes of an apartment (does nothing if it is already journaled).
+     * An apartment that was removed is journaled again under its old key.
+     * @param a the apartment
+     * @return the key of the apartment in the journal
+     */
+    public synchronized int add(Apartment a){
+        Integer key = _keys.get(a);
+        if(key == null){
+            key = _keys.size();
+            _keys.put(a,key);
+        }
+        else if(_active.contains(a)){
+            return key;
+        }
+        _active.add(a);
+        a.addApartmentListener(this);
+        return key;
+    }
+
+    /**
+     * Stops journaling the changes of an apartment (its key is kept for a later add)
+     * @param a the apartment
+     */
+    public synchronized void remove(Apartment a){
+        if(_active.remove(a)){
+            a.removeApartmentListener(this);
+        }
+    }
+
+    /**
+     * Gets the number of events journaled since the journal was opened
+     * @return the number of events
+     */
+    public synchronized long getEventCount(){
+        return _eventCount;
+    }
+
+    /**
+     * Gets the number of writes to the file since the journal was opened
+     * @return the number of batches written
+     */
+    public synchronized long getWriteCount(){
+        return _writeCount;
+    }
+
+    /**
+     * Called by a journaled apartment for every change - adds the event to the journal.
+     * Never throws: if the journal can't be written the failure is kept for flush and close.
+     * @param event the change
+     */
+    public synchronized void mutationAttempted(ApartmentEvent event){
+        Integer key = _keys.get(event.getApartment());
+        if(key == null || !_active.contains(event.getApartment()) || _failure != null){ //not journaled (or failed).
+            return;
+        }
+        boolean hasTenants = hasTenants(event.getType());
+        byte[] oldId = null;
+        byte[] oldName = null;
+        byte[] newId = null;
+        byte[] newName = null;
+        int size = FIXED_SIZE;
+        if(hasTenants){
+            oldId = event.getOldTenant().getId().getBytes(StandardCharsets.UTF_8);
+            oldName = event.getOldTenant().getName().getBytes(StandardCharsets.UTF_8);
+            newId = event.getNewTenant().getId().getBytes(StandardCharsets.UTF_8);
+            newName = event.getNewTenant().getName().getBytes(StandardCharsets.UTF_8);
+            size += 2*(4 + 4 + 4) + oldId.length + oldName.length + newId.length + newName.length;
+        }
+        if(size > _buffer.remaining()){
+            try{
+                flush();
+            }
+            catch(IOException e){ //kept in _failure by flush.
+                return;
+            }
+            if(size > _buffer.capacity()){ //can't be recorded, and replay can't skip it.
+                _failure = new IOException("Event is bigger than the journal buffer: "+size+" bytes");
+                return;
+            }
+        }
+        _buffer.putInt(size - 4);
+        _buffer.putInt(key);
+        _buffer.put((byte)event.getType().ordinal());
+        _buffer.put(event.isAccepted() ? (byte)1 : (byte)0);
+        _buffer.put(event.getStatus() == null ? NO_STATUS : (byte)event.getStatus().ordinal());
+        _buffer.putInt(event.getOldNoOfRooms());
+        _buffer.putInt(event.getNewNoOfRooms());
+        _buffer.putDouble(event.getOldArea());
+        _buffer.putDouble(event.getNewArea());
+        _buffer.putDouble(event.getOldPrice());
+        _buffer.putDouble(event.getNewPrice());
+        _buffer.putInt(event.getOldRentalStartDate().toEpochDay());
+        _buffer.putInt(event.getNewRentalStartDate().toEpochDay());
+        _buffer.putInt(event.getOldRentalEndDate().toEpochDay());
+        _buffer.putInt(event.getNewRentalEndDate().toEpochDay());
+        if(hasTenants){
+            putTenant(event.getOldTenant(),oldId,oldName);
+            putTenant(event.getNewTenant(),newId,newName);
+        }
+        _eventCount++;
+    }
+
+    /**
+     * Journaled apartments are told about changes by mutationAttempted - nothing to do here
+     * @param apartment the apartment that changed
+     */
+    public void apartmentChanged(Apartment apartment){
+    }
+
+    /**
+     * Writes the buffered events to the file (one write for the whole batch)
+     * @throws IOException if the file can't be written, now or by an earlier write
+     * (then the journal records no more events)
+     */
+    public synchronized void flush() throws IOException{
+        if(_failure != null){
+            throw new IOException("The journal stopped after a failed write",_failure);
+        }
+        if(_buffer.position() == 0){ //nothing to write.
+            return;
+        }
+        long start = Metrics.isTimingEnabled() ? System.nanoTime() : 0;
+        _buffer.flip();
+        try{
+            writeFully(_channel,_buffer);
+        }
+        catch(IOException e){
+            _failure = e;
+            throw e;
+        }
+        _buffer.clear();
+        _writeCount++;
+        if(Metrics.isTimingEnabled()){
+            Metrics.recordLatency(ApartmentMetrics.Operation.JOURNAL_FLUSH,System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Writes the buffered events and makes sure they reach the disk
+     * @throws IOException if the file can't be written, now or by an earlier write
+     */
+    public synchronized void force() throws IOException{
+        flush();
+        _channel.force(false);
+    }
+
+    /**
+     * Writes the buffered events to the disk and closes the file
+     * (the apartments are no longer journaled)
+     * @throws IOException if the file can't be written, now or by an earlier write
+     */
+    public synchronized void close() throws IOException{
+        try{
+            force();
+        }
+        finally{
+            for(Apartment a : _active){
+                a.removeApartmentListener(this);
+            }
+            _active.clear();
+            _channel.close();
+        }
+    }
+
+    /**
+     * Reads all the events of a journal file
+     * @param path the file
+     * @param apartments the apartments in the order they were added to the journal
+     * (an event of a key that is not in the list has a null apartment)
+     * @param consumer called with every event, in the order they were journaled
+     * @return the number of events read (a record cut short at the end of the file is ignored)
+     * @throws IOException if the file can't be read or is not a journal file
+     */
+    public static long read(Path path, List<Apartment> apartments, Consumer<ApartmentEvent> consumer) throws IOException{
+        try(FileChannel channel = FileChannel.open(path,StandardOpenOption.READ)){
+            checkHeader(channel,path);
+            channel.position(HEADER_SIZE);
+            ByteBuffer buffer = ByteBuffer.allocate(DEFFAULT_BUFFER_SIZE);
+            long count = 0;
+            boolean end = false;
+            while(!end){
+                end = channel.read(buffer) < 0;
+                buffer.flip();
+                while(buffer.remaining() >= 4 && buffer.remaining() >= 4 + buffer.getInt(buffer.position())){
+                    int size = buffer.getInt();
+                    int recordEnd = buffer.position() + size;
+                    consumer.accept(readEvent(buffer,apartments));
+                    buffer.position(recordEnd);
+                    count++;
+                }
+                if(!end && buffer.remaining() >= 4 && 4 + buffer.getInt(buffer.position()) > buffer.capacity()){
+                    ByteBuffer bigger = ByteBuffer.allocate(4 + buffer.getInt(buffer.position()));
+                    bigger.put(buffer); //a record bigger than the buffer.
+                    buffer = bigger;
+                }
+                else
+                {
+                    buffer.compact(); //keep the start of a record cut by the read.
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Rebuilds the state of apartments by applying the accepted changes of a journal file
+     * (the apartments should hold the values they had when they were added to the journal)
+     * @param path the file
+     * @param apartments the apartments in the order they were added to the journal
+     * @return the number of changes applied
+     * @throws IOException if the file can't be read or is not a journal file
+     */
+    public static long replay(Path path, List<Apartment> apartments) throws IOException{
+        long[] applied = new long[1];
+        read(path,apartments,event -> {
+            if(event.isAccepted() && event.getApartment() != null){
+                event.getApartment().restore(event.getNewNoOfRooms(),event.getNewArea(),event.getNewPrice(),
+                    hasTenants(event.getType()) ? event.getNewTenant() : null,
+                    event.getNewRentalStartDate(),event.getNewRentalEndDate());
+                applied[0]++;
+            }
+        });
+        return applied[0];
+    }
+
+    /**
+     * Reads one record (after its size) from the buffer
+     */
+    private static ApartmentEvent readEvent(ByteBuffer buf, List<Apartment> apartments){
+        int key = buf.getInt();
+        ApartmentEvent.Type type = ApartmentEvent.Type.values()[buf.get()];
+        boolean accepted = buf.get() != 0;
+        byte status = buf.get();
+        int oldNoOfRooms = buf.getInt();
+        int newNoOfRooms = buf.getInt();
+        double oldArea = buf.getDouble();
+        double newArea = buf.getDouble();
+        double oldPrice = buf.getDouble();
+        double newPrice = buf.getDouble();
+        ImmutableDate oldStart = dateOf(buf.getInt());
+        ImmutableDate newStart = dateOf(buf.getInt());
+        ImmutableDate oldEnd = dateOf(buf.getInt());
+        ImmutableDate newEnd = dateOf(buf.getInt());
+        Person oldTenant = null;
+        Person newTenant = null;
+        if(hasTenants(type)){
+            oldTenant = getTenant(buf);
+            newTenant = getTenant(buf);
+        }
+        Apartment apartment = key < apartments.size() ? apartments.get(key) : null;
+        return new ApartmentEvent(apartment,type,accepted,status == NO_STATUS ? null : TenantChangeStatus.values()[status],
+            oldNoOfRooms,newNoOfRooms,oldArea,newArea,oldPrice,newPrice,oldTenant,newTenant,oldStart,newStart,oldEnd,newEnd);
+    }
+
+    /**
+     * Checks if events of this type change the tenant (and so have tenants in the record)
+     */
+    private static boolean hasTenants(ApartmentEvent.Type type){
+        return type == ApartmentEvent.Type.SET_TENANT || type == ApartmentEvent.Type.CHANGE_TENANT;
+    }
+
+    private void putTenant(Person p, byte[] id, byte[] name){
+        _buffer.putInt(p.getDateOfBirth().toEpochDay());
+        _buffer.putInt(id.length);
+        _buffer.put(id);
+        _buffer.putInt(name.length);
+        _buffer.put(name);
+    }
+
+    private static Person getTenant(ByteBuffer buf){
+        int dateOfBirth = Date.dateOfDayNumber(buf.getInt()); //packed as yyyymmdd.
+        byte[] id = new byte[buf.getInt()];
+        buf.get(id);
+        byte[] name = new byte[buf.getInt()];
+        buf.get(name);
+        return new Person(new String(name,StandardCharsets.UTF_8),dateOfBirth%100,(dateOfBirth/100)%100,
+            dateOfBirth/10000,new String(id,StandardCharsets.UTF_8));
+    }
+
+    private static ImmutableDate dateOf(int dayNumber){
+        int date = Date.dateOfDayNumber(dayNumber); //packed as yyyymmdd.
+        return ImmutableDate.valueOf(date%100,(date/100)%100,date/10000);
+    }
+
+    private static void checkHeader(FileChannel channel, Path path) throws IOException{
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header,0);
+        if(header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != VERSION){
+            throw new IOException("Not a journal file: "+path);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException{
+        while(buf.hasRemaining()){
+            channel.write(buf);
+        }
+    }
+}
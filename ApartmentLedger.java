@@ -0,0 +1,316 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file of fixed-size apartment records, opened with FileChannel.map.
+ *
+ * Opening a ledger only maps the file, so it takes the same time for any number of
+ * apartments. get returns a Record view that reads its fields straight from the mapped
+ * file (no Apartment, Person or Date objects are built), and setPrice / setRentalEndDate
+ * on a record change the file in place.
+ *
+ * File layout: a 16 byte header (magic, version, number of records, capacity)
+ * followed by 128 byte records:
+ * <pre>
+ *   0  double  area
+ *   8  double  price
+ *  16  int     rental start date (day number, see Date.calculateDate)
+ *  20  int     rental end date (day number)
+ *  24  int     tenant's date of birth (day number)
+ *  28  int     tenant's id (the 9 digits as a number)
+ *  32  short   number of rooms
+ *  34  short   length of the tenant's name in bytes
+ *  36  byte[]  tenant's name (UTF-8, up to 92 bytes)
+ * </pre>
+ * A mapping is limited to 2GB, so a ledger holds at most about 16 million records.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public class ApartmentLedger implements Closeable
+{
+    private static final int MAGIC = 0x41505431; // "APT1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int COUNT_OFFSET = 8; // offset of the number of records in the header
+    private static final int CAPACITY_OFFSET = 12; // offset of the capacity in the header
+    private static final int RECORD_SIZE = 128;
+    private static final int AREA = 0;
+    private static final int PRICE = 8;
+    private static final int START = 16;
+    private static final int END = 20;
+    private static final int DATE_OF_BIRTH = 24;
+    private static final int ID = 28;
+    private static final int ROOMS = 32;
+    private static final int NAME_LENGTH = 34;
+    private static final int NAME = 36;
+    /** The longest tenant name (in UTF-8 bytes) a record can hold. */
+    public static final int MAX_NAME_BYTES = RECORD_SIZE - NAME;
+    private static final int INVALID = 0;
+
+    private final MappedByteBuffer _buffer; // the whole mapped file
+    private int _size; // number of records in the ledger
+
+    /**
+     * Private constructor - use create or open.
+     */
+    private ApartmentLedger(MappedByteBuffer buffer)
+    {
+        _buffer = buffer;
+        _size = buffer.getInt(COUNT_OFFSET);
+    }
+
+    /**
+     * Creates a new empty ledger file (an existing file is replaced)
+     * @param path the file
+     * @param capacity the number of records the file has room for
+     * @return the new ledger
+     * @throws IOException if the file can't be created
+     */
+    public static ApartmentLedger create(Path path, int capacity) throws IOException{
+        if(capacity <= INVALID || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE){
+            throw new IllegalArgumentException("Invalid capacity: "+capacity);
+        }
+        long fileSize = HEADER_SIZE + (long)capacity * RECORD_SIZE;
+        try(FileChannel channel = FileChannel.open(path,StandardOpenOption.CREATE,StandardOpenOption.READ,
+                StandardOpenOption.WRITE,StandardOpenOption.TRUNCATE_EXISTING)){
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,0,fileSize);
+            buffer.putInt(0,MAGIC);
+            buffer.putInt(4,VERSION);
+            buffer.putInt(COUNT_OFFSET,0);
+            buffer.putInt(CAPACITY_OFFSET,capacity);
+            return new ApartmentLedger(buffer); //the mapping stays valid after the channel is closed.
+        }
+    }
+
+    /**
+     * Opens an existing ledger file
+     * @param path the file
+     * @return the ledger
+     * @throws IOException if the file can't be read or is not a ledger file
+     */
+    public static ApartmentLedger open(Path path) throws IOException{
+        try(FileChannel channel = FileChannel.open(path,StandardOpenOption.READ,StandardOpenOption.WRITE)){
+            long fileSize = channel.size();
+            if(fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE){
+                throw new IOException("Not a ledger file: "+path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,0,fileSize);
+            int capacity = buffer.getInt(CAPACITY_OFFSET);
+            int count = buffer.getInt(COUNT_OFFSET);
+            if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || capacity < 0
+                || count < 0 || count > capacity || fileSize != HEADER_SIZE + (long)capacity * RECORD_SIZE){
+                throw new IOException("Not a ledger file: "+path);
+            }
+            return new ApartmentLedger(buffer);
+        }
+    }
+
+    /**
+     * Gets the number of records in the ledger
+     * @return the number of records
+     */
+    public int size(){
+        return _size;
+    }
+
+    /**
+     * Gets the number of records the file has room for
+     * @return the capacity of the ledger
+     */
+    public int capacity(){
+        return _buffer.getInt(CAPACITY_OFFSET);
+    }
+
+    /**
+     * Adds the values of an apartment as a new record
+     * @param a the apartment
+     * @return the index of the new record
+     * @throws IllegalStateException if the ledger is full
+     * @throws IllegalArgumentException if the apartment can't be stored (more than 32767 rooms,
+     * an id that is not 9 digits, or a name longer than MAX_NAME_BYTES)
+     */
+    public int append(Apartment a){
+        if(_size == capacity()){
+            throw new IllegalStateException("Ledger is full: "+_size+" records");
+        }
+        Person tenant = a.getTenantNoCopy();
+        int id = Person.packId(tenant.getId());
+        byte[] name = tenant.getName().getBytes(StandardCharsets.UTF_8);
+        if(a.getNoOfRooms() > Short.MAX_VALUE || id < 0 || name.length > MAX_NAME_BYTES){
+            throw new IllegalArgumentException("Apartment can't be stored in the ledger: "+tenant.getId());
+        }
+        int offset = offsetOf(_size);
+        _buffer.putDouble(offset + AREA,a.getArea());
+        _buffer.putDouble(offset + PRICE,a.getPrice());
+        _buffer.putInt(offset + START,a.getRentalStartDayNumber());
+        _buffer.putInt(offset + END,a.getRentalEndDayNumber());
+        _buffer.putInt(offset + DATE_OF_BIRTH,tenant.getDateOfBirth().toEpochDay());
+        _buffer.putInt(offset + ID,id);
+        _buffer.putShort(offset + ROOMS,(short)a.getNoOfRooms());
+        _buffer.putShort(offset + NAME_LENGTH,(short)name.length);
+        _buffer.put(offset + NAME,name);
+        _size++;
+        _buffer.putInt(COUNT_OFFSET,_size); //write the count last, after the record is complete.
+        return _size - 1;
+    }
+
+    /**
+     * Gets a view of the record at the given index
+     * @param index the index of the record (0 to size-1)
+     * @return a view that reads and writes the record in the file
+     */
+    public Record get(int index){
+        if(index < 0 || index >= _size){
+            throw new IndexOutOfBoundsException("Index: "+index+", Size: "+_size);
+        }
+        return new Record(offsetOf(index));
+    }
+
+    /**
+     * Writes all the changes to the disk
+     */
+    public void force(){
+        _buffer.force();
+    }
+
+    /**
+     * Writes all the changes to the disk (the mapping itself is released by the garbage collector)
+     */
+    public void close(){
+        force();
+    }
+
+    /**
+     * Gets the position of a record in the file
+     */
+    private static int offsetOf(int index){
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    /**
+     * A view of one record in the ledger. Has the same accessors as Apartment;
+     * every call reads (or writes) the mapped file directly.
+     */
+    public class Record
+    {
+        private final int _offset; // position of the record in the file
+
+        private Record(int offset)
+        {
+            _offset = offset;
+        }
+
+        /**
+         * Gets the number of rooms the apartment has
+         * @return    the number of rooms the apartment has
+         */
+        public int getNoOfRooms(){
+            return _buffer.getShort(_offset + ROOMS);
+        }
+
+        /**
+         * Gets the area of the apartment
+         * @return    the area of the apartment
+         */
+        public double getArea(){
+            return _buffer.getDouble(_offset + AREA);
+        }
+
+        /**
+         * Gets the price of the apartment
+         * @return    the price of the apartment
+         */
+        public double getPrice(){
+            return _buffer.getDouble(_offset + PRICE);
+        }
+
+        /**
+         * Gets the tenant renting the apartment
+         * @return a new Person with the tenant's values
+         */
+        public Person getTenant(){
+            byte[] name = new byte[_buffer.getShort(_offset + NAME_LENGTH)];
+            _buffer.get(_offset + NAME,name);
+            Date dateOfBirth = Date.fromEpochDay(_buffer.getInt(_offset + DATE_OF_BIRTH));
+            return new Person(new String(name,StandardCharsets.UTF_8),dateOfBirth.getDay(),
+                dateOfBirth.getMonth(),dateOfBirth.getYear(),Person.unpackId(_buffer.getInt(_offset + ID)));
+        }
+
+        /**
+         * Gets the rental start date
+         * @return  a new Date with the rental start date
+         */
+        public Date getRentalStartDate(){
+            return Date.fromEpochDay(_buffer.getInt(_offset + START));
+        }
+
+        /**
+         * Gets the rental end date
+         * @return  a new Date with the rental end date
+         */
+        public Date getRentalEndDate(){
+            return Date.fromEpochDay(_buffer.getInt(_offset + END));
+        }
+
+        /**
+         * Sets the apartment's price in the file (only if the new value is positive)
+         * @param  price apartment's new price
+         */
+        public void setPrice(double price){
+            if(price > INVALID){
+                _buffer.putDouble(_offset + PRICE,price); //if valid change,if invalid dont do anything.
+            }
+        }
+
+        /**
+         *  Sets the apartment's rental end date in the file
+         *  (only if the new rental end date is after the current rental start date)
+         * @param  d apartment's new rental end date
+         */
+        public void setRentalEndDate(Date d){
+            if(d.toEpochDay() > _buffer.getInt(_offset + START)){
+                _buffer.putInt(_offset + END,d.toEpochDay());
+            }
+        }
+
+        /**
+         * Computes the number of days left between a given date and the end of rental date.
+         * If the given date comes after the end of rental date, returns -1.
+         * @param  d a date object
+         * @return the number of days left (same as Apartment.daysLeft)
+         */
+        public int daysLeft(Date d){
+            int left = _buffer.getInt(_offset + END) - d.toEpochDay();
+            if(left < 0){ //d is after the end of the rental.
+                return -1;
+            }
+            return left;
+        }
+
+        /**
+         * Creates a new Apartment object with the values of this record
+         * @return a new Apartment with the same values
+         */
+        public Apartment toApartment(){
+            Date start = getRentalStartDate();
+            Date end = getRentalEndDate();
+            return new Apartment(getNoOfRooms(),getArea(),getPrice(),getTenant(),
+                start.getDay(),start.getMonth(),start.getYear(),end.getDay(),end.getMonth(),end.getYear());
+        }
+
+        /**
+         * Returns a String that represents this Apartment (same format as Apartment.toString)
+         * @return   a String that represents this Apartment
+         */
+        public String toString(){
+            return toApartment().toString();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * A listener that is told when an Apartment changes.
+ * Indexes and other structures built over apartments register a listener so they
+ * can update themselves when an apartment is changed through its setters,
+ * extendRentalPeriod or changeTenant.
+ * Journals and metrics can also implement mutationAttempted to see every change,
+ * including the rejected ones.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public interface ApartmentListener
+{
+    /**
+     * Called after the apartment has been changed
+     * (not called when a change is rejected and nothing changed).
+     * @param apartment the apartment that changed
+     */
+    void apartmentChanged(Apartment apartment);
+
+    /**
+     * Called for every change asked of the apartment, accepted or rejected
+     * (called before an accepted change is applied, and so before apartmentChanged).
+     * Does nothing unless a listener needs it.
+     * @param event the change, with the old values and the new (or asked for) values
+     */
+    default void mutationAttempted(ApartmentEvent event){
+    }
+}
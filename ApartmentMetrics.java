@@ -0,0 +1,60 @@
+/**
+ * Receives measurements from Person, Date, Apartment and the classes built on them.
+ *
+ * The installed implementation (see Metrics.install) is called when changeTenant (or a
+ * TenantChangeBatch) rejects a change, when a constructor uses a default value instead of
+ * an invalid one, and with the time an operation took (only while timing is enabled).
+ * CounterMetrics is the built-in implementation; another one can be installed to send the
+ * values to a monitoring system.
+ *
+ * Implementations are called on the hot paths from any thread, so they must be
+ * thread-safe and fast.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public interface ApartmentMetrics
+{
+    /**
+     * The default values constructors use instead of invalid ones.
+     */
+    enum Fallback
+    {
+        DATE, // an invalid date became 01/01/2000 (Date and ImmutableDate)
+        PERSON_NAME, // an empty name became "Someone"
+        PERSON_ID, // an id that is not 9 characters became "000000000"
+        NO_OF_ROOMS, // the number of rooms became 3
+        AREA, // the area became 80
+        PRICE, // the price became 5000
+        RENTAL_END_DATE // a rental end date not after the start date was moved one year after it
+    }
+
+    /**
+     * The operations that are timed.
+     */
+    enum Operation
+    {
+        CHANGE_TENANT, // Apartment.changeTenant
+        TENANT_CHANGE_BATCH, // TenantChangeBatch.run
+        JOURNAL_FLUSH // ApartmentJournal writing a batch
+    }
+
+    /**
+     * Called when changeTenant rejects a change (or a TenantChangeBatch rejects a proposal)
+     * @param status the rule that rejected it
+     */
+    void tenantChangeRejected(TenantChangeStatus status);
+
+    /**
+     * Called when a constructor uses a default value
+     * @param fallback the default value used
+     */
+    void defaultUsed(Fallback fallback);
+
+    /**
+     * Called with the time an operation took (only while Metrics.isTimingEnabled)
+     * @param operation the operation
+     * @param nanos the time it took in nanoseconds
+     */
+    void recordLatency(Operation operation, long nanos);
+}
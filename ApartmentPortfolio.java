@@ -0,0 +1,439 @@
+import java.util.Arrays;
+
+/**
+ * Represents a portfolio of apartments stored column by column.
+ *
+ * Instead of keeping an Apartment object (with its Person and Date objects) for every
+ * apartment, the portfolio keeps each attribute in its own primitive array: rooms, area,
+ * price, rental start/end day numbers and the tenant's date of birth day number.
+ * The tenant's id is kept packed into an int (Person.packId), and the tenant's name as a
+ * code into a table of the different names, so the portfolio keeps one String per
+ * different name instead of a name and an id String per apartment.
+ *
+ * get returns a small View object that reads and writes the arrays directly and has
+ * the same accessors as Apartment.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public class ApartmentPortfolio
+{
+    private int _size; // number of apartments in the portfolio
+    private int[] _noOfRooms; // number of rooms of each apartment
+    private double[] _area; // area of each apartment
+    private double[] _price; // price of rent of each apartment
+    private int[] _rentalStart; // day number of each rental start date
+    private int[] _rentalEnd; // day number of each rental end date
+    private int[] _tenantDateOfBirth; // day number of each tenant's date of birth
+    private int[] _tenantName; // code of each tenant's name in _names
+    private int[] _tenantId; // id of each tenant packed by Person.packId (-1 - its code in _names if it is not 9 digits)
+    private String[] _names; // every different name (and id that is not 9 digits), by code
+    private int _nameCount; // number of codes in _names
+    private int[] _nameSlots; // open-addressing table of code + 1 by String hash (0 = empty slot)
+    private static final int INVALID = 0;
+    private static final int DEFFAULT_CAPACITY = 16;
+
+    /**
+     * Creates an empty portfolio
+     */
+    public ApartmentPortfolio()
+    {
+        this(DEFFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty portfolio with room for the given number of apartments
+     * @param capacity  the number of apartments to reserve room for
+     */
+    public ApartmentPortfolio(int capacity)
+    {
+        if(capacity <= INVALID){ //invalid value get deffault.
+            capacity = DEFFAULT_CAPACITY;
+        }
+        _noOfRooms = new int[capacity];
+        _area = new double[capacity];
+        _price = new double[capacity];
+        _rentalStart = new int[capacity];
+        _rentalEnd = new int[capacity];
+        _tenantDateOfBirth = new int[capacity];
+        _tenantName = new int[capacity];
+        _tenantId = new int[capacity];
+        _names = new String[DEFFAULT_CAPACITY];
+        _nameSlots = new int[DEFFAULT_CAPACITY];
+    }
+
+    /**
+     * Adds (a copy of the values of) an apartment to the portfolio
+     * @param a  the apartment to add
+     * @return the index of the apartment in the portfolio
+     */
+    public int add(Apartment a)
+    {
+        if(_size == _noOfRooms.length){ //full, grow all the columns.
+            grow();
+        }
+        Person tenant = a.getTenantNoCopy(); //only read, no copy needed.
+        _noOfRooms[_size] = a.getNoOfRooms();
+        _area[_size] = a.getArea();
+        _price[_size] = a.getPrice();
+        _rentalStart[_size] = a.getRentalStartDayNumber();
+        _rentalEnd[_size] = a.getRentalEndDayNumber();
+        _tenantDateOfBirth[_size] = tenant.getDateOfBirth().toEpochDay();
+        _tenantName[_size] = codeOf(tenant.getName());
+        _tenantId[_size] = idCodeOf(tenant.getId());
+        return _size++;
+    }
+
+    /**
+     * Adds an apartment from its column values, without any checks
+     * (used to load a portfolio from a snapshot, whose Reader checks the ranges of the values)
+     * @return the index of the apartment in the portfolio
+     */
+    int add(int noOfRooms, double area, double price, int rentalStart, int rentalEnd,
+        int tenantDateOfBirth, String tenantName, String tenantId){
+        if(_size == _noOfRooms.length){ //full, grow all the columns.
+            grow();
+        }
+        _noOfRooms[_size] = noOfRooms;
+        _area[_size] = area;
+        _price[_size] = price;
+        _rentalStart[_size] = rentalStart;
+        _rentalEnd[_size] = rentalEnd;
+        _tenantDateOfBirth[_size] = tenantDateOfBirth;
+        _tenantName[_size] = codeOf(tenantName);
+        _tenantId[_size] = idCodeOf(tenantId);
+        return _size++;
+    }
+
+    /**
+     * Gets the number of apartments in the portfolio
+     * @return the number of apartments in the portfolio
+     */
+    public int size(){
+        return _size;
+    }
+
+    /**
+     * Finds the apartments whose rental ends before a given date (see EpochDays.before)
+     * @param d a date
+     * @return a bitmask - bit i is set if the rental of apartment i ends before d
+     */
+    public long[] endingBefore(Date d){
+        long[] mask = EpochDays.newMask(_size);
+        EpochDays.before(_rentalEnd,_size,d.toEpochDay(),mask);
+        return mask;
+    }
+
+    /**
+     * Computes the days left for every apartment (see Apartment.daysLeft)
+     * @param d a date
+     * @return a new array - the days left of apartment i at index i (-1 if its rental ended before d)
+     */
+    public int[] daysLeft(Date d){
+        int[] result = new int[_size];
+        EpochDays.daysLeft(_rentalEnd,_size,d.toEpochDay(),result);
+        return result;
+    }
+
+    /**
+     * Gets a view of the apartment at the given index
+     * @param index  the index of the apartment (0 to size-1)
+     * @return a view that reads and writes the apartment's values in the portfolio
+     */
+    public View get(int index){
+        checkIndex(index);
+        return new View(index);
+    }
+
+    /**
+     * Creates a new Apartment object with the values of the apartment at the given index
+     * @param index  the index of the apartment (0 to size-1)
+     * @return a new Apartment with the same values
+     */
+    public Apartment toApartment(int index){
+        checkIndex(index);
+        Date start = Date.fromEpochDay(_rentalStart[index]);
+        Date end = Date.fromEpochDay(_rentalEnd[index]);
+        return new Apartment(_noOfRooms[index],_area[index],_price[index],tenantOf(index),
+            start.getDay(),start.getMonth(),start.getYear(),end.getDay(),end.getMonth(),end.getYear());
+    }
+
+    /**
+     * Gets the day number of the rental start date of an apartment
+     * @param index  the index of the apartment
+     * @return the day number of its rental start date
+     */
+    int getRentalStartDayNumber(int index){
+        return _rentalStart[index];
+    }
+
+    /**
+     * Gets the day number of the rental end date of an apartment
+     * @param index  the index of the apartment
+     * @return the day number of its rental end date
+     */
+    int getRentalEndDayNumber(int index){
+        return _rentalEnd[index];
+    }
+
+    /**
+     * Gets the day number of the date of birth of an apartment's tenant
+     * @param index  the index of the apartment
+     * @return the day number of its tenant's date of birth
+     */
+    int getTenantDateOfBirthDayNumber(int index){
+        return _tenantDateOfBirth[index];
+    }
+
+    /**
+     * Gets the name of an apartment's tenant
+     * @param index  the index of the apartment
+     * @return its tenant's name
+     */
+    String getTenantName(int index){
+        return _names[_tenantName[index]];
+    }
+
+    /**
+     * Gets the id of an apartment's tenant
+     * @param index  the index of the apartment
+     * @return its tenant's id (a new String if it is 9 digits)
+     */
+    String getTenantId(int index){
+        int id = _tenantId[index];
+        return id >= 0 ? Person.unpackId(id) : _names[-1 - id];
+    }
+
+    /**
+     * Gets the number of rooms of an apartment (no View is created)
+     * @param index  the index of the apartment
+     * @return its number of rooms
+     */
+    int getNoOfRooms(int index){
+        return _noOfRooms[index];
+    }
+
+    /**
+     * Gets the area of an apartment (no View is created)
+     * @param index  the index of the apartment
+     * @return its area
+     */
+    double getArea(int index){
+        return _area[index];
+    }
+
+    /**
+     * Gets the price of an apartment (no View is created)
+     * @param index  the index of the apartment
+     * @return its price
+     */
+    double getPrice(int index){
+        return _price[index];
+    }
+
+    /**
+     * Creates the tenant of the apartment at the given index
+     */
+    private Person tenantOf(int index){
+        Date dateOfBirth = Date.fromEpochDay(_tenantDateOfBirth[index]);
+        return new Person(getTenantName(index),dateOfBirth.getDay(),dateOfBirth.getMonth(),
+            dateOfBirth.getYear(),getTenantId(index));
+    }
+
+    /**
+     * Gets the code of an id: the id packed by Person.packId, or -1 - its code in _names
+     * if it is not 9 digits
+     */
+    private int idCodeOf(String id){
+        int packed = Person.packId(id);
+        return packed >= 0 ? packed : -1 - codeOf(id);
+    }
+
+    /**
+     * Gets the code of a String in _names, adding it if it is not there yet
+     */
+    private int codeOf(String s){
+        int slot = slotOf(s);
+        if(_nameSlots[slot] != 0){ //already in the table.
+            return _nameSlots[slot] - 1;
+        }
+        if((_nameCount + 1) * 4 > _nameSlots.length * 3){ //keep the table at most 3/4 full.
+            resizeNameSlots(_nameSlots.length * 2);
+            slot = slotOf(s);
+        }
+        if(_nameCount == _names.length){
+            _names = Arrays.copyOf(_names,_nameCount * 2);
+        }
+        _names[_nameCount] = s;
+        _nameSlots[slot] = ++_nameCount;
+        return _nameCount - 1;
+    }
+
+    /**
+     * Gets the slot of _nameSlots that holds the String, or the empty slot where it would be added
+     */
+    private int slotOf(String s){
+        int mask = _nameSlots.length - 1;
+        int slot = (int)((s.hashCode() * 0x9E3779B97F4A7C15L) >>> 32) & mask; //spread the bits.
+        while(_nameSlots[slot] != 0 && !_names[_nameSlots[slot] - 1].equals(s)){ //linear probing.
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Rebuilds _nameSlots with a new capacity (a power of 2)
+     */
+    private void resizeNameSlots(int capacity){
+        _nameSlots = new int[capacity];
+        for(int code = 0; code < _nameCount; code++){
+            _nameSlots[slotOf(_names[code])] = code + 1;
+        }
+    }
+
+    /**
+     * Throws IndexOutOfBoundsException if the index is not in the portfolio
+     */
+    private void checkIndex(int index){
+        if(index < 0 || index >= _size){
+            throw new IndexOutOfBoundsException("Index: "+index+", Size: "+_size);
+        }
+    }
+
+    /**
+     * Doubles the capacity of all the columns
+     */
+    private void grow(){
+        int capacity = _noOfRooms.length * 2;
+        _noOfRooms = Arrays.copyOf(_noOfRooms,capacity);
+        _area = Arrays.copyOf(_area,capacity);
+        _price = Arrays.copyOf(_price,capacity);
+        _rentalStart = Arrays.copyOf(_rentalStart,capacity);
+        _rentalEnd = Arrays.copyOf(_rentalEnd,capacity);
+        _tenantDateOfBirth = Arrays.copyOf(_tenantDateOfBirth,capacity);
+        _tenantName = Arrays.copyOf(_tenantName,capacity);
+        _tenantId = Arrays.copyOf(_tenantId,capacity);
+    }
+
+    /**
+     * A lightweight view of one apartment in the portfolio.
+     * Has the same accessors as Apartment, and reads/writes the portfolio arrays directly.
+     */
+    public class View
+    {
+        private final int _index; // index of the apartment in the portfolio
+
+        private View(int index)
+        {
+            _index = index;
+        }
+
+        /**
+         * Gets the index of this apartment in the portfolio
+         * @return the index of this apartment
+         */
+        public int getIndex(){
+            return _index;
+        }
+
+        /**
+         * Gets the number of rooms the apartment has
+         * @return    the number of rooms the apartment has
+         */
+        public int getNoOfRooms(){
+            return _noOfRooms[_index];
+        }
+
+        /**
+         * Gets the area of the apartment
+         * @return    the area of the apartment
+         */
+        public double getArea(){
+            return _area[_index];
+        }
+
+        /**
+         * Gets the price of the apartment
+         * @return    the price of the apartment
+         */
+        public double getPrice(){
+            return _price[_index];
+        }
+
+        /**
+         * Gets the tenant renting the apartment
+         * @return a new Person with the tenant's values
+         */
+        public Person getTenant(){
+            return tenantOf(_index);
+        }
+
+        /**
+         * Gets the rental start date
+         * @return  a new Date with the rental start date
+         */
+        public Date getRentalStartDate(){
+            return Date.fromEpochDay(_rentalStart[_index]);
+        }
+
+        /**
+         * Gets the rental end date
+         * @return  a new Date with the rental end date
+         */
+        public Date getRentalEndDate(){
+            return Date.fromEpochDay(_rentalEnd[_index]);
+        }
+
+        /**
+         * Sets the apartment's number of rooms (only if the new value is positive)
+         * @param num new number of rooms
+         */
+        public void setNoOfRooms(int num){
+            if(num > INVALID){
+                _noOfRooms[_index] = num; //if valid change,if invalid dont do anything.
+            }
+        }
+
+        /**
+         * Sets the apartment's area (only if the new value is positive)
+         * @param area apartment's new area
+         */
+        public void setArea(double area){
+            if(area > INVALID){
+                _area[_index] = area; //if valid change,if invalid dont do anything.
+            }
+        }
+
+        /**
+         * Sets the apartment's price (only if the new value is positive)
+         * @param  price apartment's new price
+         */
+        public void setPrice(double price){
+            if(price > INVALID){
+                _price[_index] = price; //if valid change,if invalid dont do anything.
+            }
+        }
+
+        /**
+         * Computes the number of days left between a given date and the end of rental date.
+         * If the given date comes after the end of rental date, returns -1.
+         * @param  d a date object
+         * @return the number of days left (same as Apartment.daysLeft)
+         */
+        public int daysLeft(Date d){
+            int left = _rentalEnd[_index] - d.toEpochDay();
+            if(left < 0){ //d is after the end of the rental.
+                return -1;
+            }
+            return left;
+        }
+
+        /**
+         * Returns a String that represents this Apartment (same format as Apartment.toString)
+         * @return   a String that represents this Apartment
+         */
+        public String toString(){
+            return toApartment(_index).toString();
+        }
+    }
+}
@@ -0,0 +1,418 @@
+import java.util.Arrays;
+
+/**
+ * A search index over an ApartmentPortfolio, answering queries such as
+ * "3 or more rooms, 70 to 100 square metres, up to 6000, free from date D"
+ * with the results ranked (cheapest, largest or free soonest first) and returned a page at a time.
+ *
+ * The index keeps bitmaps (bit i is apartment i of the portfolio):
+ * - one bitmap for every number of rooms,
+ * - for area, price and rental end day: the portfolio indices sorted by the value, and
+ *   checkpoint bitmaps of the first k/SEGMENTS of that order, so the apartments with a value
+ *   in a range are the difference of two checkpoints plus the few apartments at the ends
+ *   of the range.
+ * A query ANDs one bitmap per condition word by word, and a page is read by walking the
+ * ranking order, skipping whole segments that have fewer matches than the page offset.
+ *
+ * The index is a snapshot - create a new one after the portfolio changes.
+ * Any number of threads can search the same index at once.
+ * At 1M apartments the index takes about 60 MB.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public class ApartmentSearch
+{
+    private int _size; // number of apartments indexed
+    private int _words; // number of words in a bitmap
+    private int[] _roomCounts; // the different numbers of rooms, ascending
+    private long[][] _roomBitmaps; // bitmap of the apartments with each number of rooms
+    private Column _area; // apartments by area
+    private Column _price; // apartments by price
+    private Column _rentalEnd; // apartments by rental end day number
+    private static final int WORD_BITS = 64;
+    private static final int SEGMENTS = 64; // checkpoints in every sorted column
+
+    /**
+     * The orders results can be ranked by.
+     */
+    public enum Order
+    {
+        PRICE, // cheapest first
+        AREA, // largest first
+        AVAILABILITY // rental ending soonest first
+    }
+
+    /**
+     * The conditions of a search. A new query has no conditions (finds every apartment);
+     * every setter adds one condition, and all of them must hold.
+     */
+    public static class Query
+    {
+        private int _minRooms = Integer.MIN_VALUE;
+        private int _maxRooms = Integer.MAX_VALUE;
+        private double _minArea = Double.NEGATIVE_INFINITY;
+        private double _maxArea = Double.POSITIVE_INFINITY;
+        private double _minPrice = Double.NEGATIVE_INFINITY;
+        private double _maxPrice = Double.POSITIVE_INFINITY;
+        private int _freeFrom = Integer.MAX_VALUE; // day number the rental must end before
+        private boolean _hasFreeFrom; // true if setFreeFrom was called
+
+        /**
+         * Finds only apartments with a number of rooms in a range
+         * @param min the smallest number of rooms
+         * @param max the largest number of rooms (Integer.MAX_VALUE for no limit)
+         */
+        public void setRooms(int min, int max){
+            _minRooms = min;
+            _maxRooms = max;
+        }
+
+        /**
+         * Finds only apartments with an area in a range (both ends included)
+         * @param min the smallest area
+         * @param max the largest area (Double.POSITIVE_INFINITY for no limit)
+         */
+        public void setArea(double min, double max){
+            _minArea = min;
+            _maxArea = max;
+        }
+
+        /**
+         * Finds only apartments with a price in a range (both ends included)
+         * @param min the lowest price
+         * @param max the highest price (Double.POSITIVE_INFINITY for no limit)
+         */
+        public void setPrice(double min, double max){
+            _minPrice = min;
+            _maxPrice = max;
+        }
+
+        /**
+         * Finds only apartments that are free from a date - their rental end date is before it
+         * (the same as getRentalEndDate().before(d))
+         * @param d the date the apartment must be free from
+         */
+        public void setFreeFrom(Date d){
+            _freeFrom = d.toEpochDay();
+            _hasFreeFrom = true;
+        }
+    }
+
+    /**
+     * One page of search results.
+     */
+    public static class Page
+    {
+        private final int _total;
+        private final int _offset;
+        private final int[] _indices;
+
+        private Page(int total, int offset, int[] indices)
+        {
+            _total = total;
+            _offset = offset;
+            _indices = indices;
+        }
+
+        /**
+         * Gets the number of apartments found (on all the pages)
+         * @return the number of apartments found
+         */
+        public int getTotal(){
+            return _total;
+        }
+
+        /**
+         * Gets the rank of the first apartment of this page (0 is the first result)
+         * @return the offset of this page
+         */
+        public int getOffset(){
+            return _offset;
+        }
+
+        /**
+         * Gets the portfolio indices of the apartments on this page, in rank order
+         * @return a new array of portfolio indices
+         */
+        public int[] getIndices(){
+            return _indices.clone();
+        }
+    }
+
+    /**
+     * Apartments sorted by one value, with checkpoint bitmaps of the sorted order.
+     */
+    private static class Column
+    {
+        private int[] _order; // portfolio indices sorted by value (equal values by index)
+        private double[] _sorted; // the values in sorted order
+        private int _segment; // positions between two checkpoints
+        private long[][] _checkpoints; // _checkpoints[k] has the apartments at positions before boundary(k)
+    }
+
+    /**
+     * Indexes the apartments of a portfolio
+     * @param portfolio the portfolio (later changes to it are not seen by this index)
+     */
+    public ApartmentSearch(ApartmentPortfolio portfolio)
+    {
+        _size = portfolio.size();
+        _words = (_size + WORD_BITS - 1) / WORD_BITS;
+        double[] area = new double[_size];
+        double[] price = new double[_size];
+        double[] end = new double[_size];
+        int[] rooms = new int[_size];
+        for(int i = 0; i < _size; i++){
+            rooms[i] = portfolio.getNoOfRooms(i);
+            area[i] = portfolio.getArea(i);
+            price[i] = portfolio.getPrice(i);
+            end[i] = portfolio.getRentalEndDayNumber(i);
+        }
+        indexRooms(rooms);
+        _area = createColumn(area);
+        _price = createColumn(price);
+        _rentalEnd = createColumn(end);
+    }
+
+    /**
+     * Gets the number of apartments indexed
+     * @return the number of apartments indexed
+     */
+    public int size(){
+        return _size;
+    }
+
+    /**
+     * Counts the apartments that match a query
+     * @param query the conditions
+     * @return the number of apartments found
+     */
+    public int count(Query query){
+        return EpochDays.count(match(query));
+    }
+
+    /**
+     * Finds the apartments that match a query and returns one page of them
+     * @param query the conditions
+     * @param order the order the results are ranked by
+     * @param offset the rank of the first result to return (0 for the first page)
+     * @param limit the largest number of results to return
+     * @return the page (its indices are portfolio indices)
+     */
+    public Page search(Query query, Order order, int offset, int limit){
+        if(offset < 0 || limit < 0){
+            throw new IllegalArgumentException("Offset and limit can't be negative: "+offset+", "+limit);
+        }
+        long[] matches = match(query);
+        int total = EpochDays.count(matches);
+        int[] indices = new int[Math.max(0,Math.min(limit,total - offset))];
+        if(indices.length > 0){
+            if(order == Order.PRICE){
+                collect(_price,false,matches,offset,indices);
+            }
+            else if(order == Order.AREA){
+                collect(_area,true,matches,offset,indices);
+            }
+            else{
+                collect(_rentalEnd,false,matches,offset,indices);
+            }
+        }
+        return new Page(total,offset,indices);
+    }
+
+    /**
+     * Computes the bitmap of the apartments that match a query
+     */
+    private long[] match(Query query){
+        long[] matches = new long[_words];
+        if(query._minRooms == Integer.MIN_VALUE && query._maxRooms == Integer.MAX_VALUE){
+            System.arraycopy(_price._checkpoints[SEGMENTS],0,matches,0,_words); //every apartment.
+        }
+        else{
+            for(int r = 0; r < _roomCounts.length; r++){
+                if(_roomCounts[r] >= query._minRooms && _roomCounts[r] <= query._maxRooms){
+                    or(matches,_roomBitmaps[r]);
+                }
+            }
+        }
+        long[] range = new long[_words];
+        if(query._minArea != Double.NEGATIVE_INFINITY || query._maxArea != Double.POSITIVE_INFINITY){
+            select(_area,firstAtLeast(_area,query._minArea),firstAbove(_area,query._maxArea),range);
+            and(matches,range);
+        }
+        if(query._minPrice != Double.NEGATIVE_INFINITY || query._maxPrice != Double.POSITIVE_INFINITY){
+            select(_price,firstAtLeast(_price,query._minPrice),firstAbove(_price,query._maxPrice),range);
+            and(matches,range);
+        }
+        if(query._hasFreeFrom){
+            select(_rentalEnd,0,firstAtLeast(_rentalEnd,query._freeFrom),range);
+            and(matches,range);
+        }
+        return matches;
+    }
+
+    /**
+     * Puts in mask the apartments at positions from (included) to to (excluded) of a column
+     */
+    private void select(Column column, int from, int to, long[] mask){
+        if(from >= to){
+            Arrays.fill(mask,0);
+            return;
+        }
+        int first = (from + column._segment - 1) / column._segment; //first checkpoint at or after from.
+        int last = to == _size ? SEGMENTS : to / column._segment; //last checkpoint at or before to.
+        if(first > last){ //both ends in the same segment.
+            Arrays.fill(mask,0);
+            setBits(column,from,to,mask);
+            return;
+        }
+        long[] upper = column._checkpoints[last];
+        long[] lower = column._checkpoints[first];
+        for(int w = 0; w < _words; w++){
+            mask[w] = upper[w] & ~lower[w];
+        }
+        setBits(column,from,boundary(column,first),mask);
+        setBits(column,boundary(column,last),to,mask);
+    }
+
+    /**
+     * Fills indices with the matches from rank offset on, in the order of a column
+     */
+    private void collect(Column column, boolean descending, long[] matches, int offset, int[] indices){
+        int skip = offset;
+        int found = 0;
+        for(int s = 0; s < SEGMENTS && found < indices.length; s++){
+            int k = descending ? SEGMENTS - 1 - s : s;
+            long[] lower = column._checkpoints[k];
+            long[] upper = column._checkpoints[k + 1];
+            int inSegment = 0;
+            for(int w = 0; w < _words; w++){
+                inSegment += Long.bitCount(matches[w] & upper[w] & ~lower[w]);
+            }
+            if(inSegment <= skip){ //the whole segment is before the page.
+                skip -= inSegment;
+                continue;
+            }
+            int from = boundary(column,k);
+            int to = boundary(column,k + 1);
+            for(int p = 0; p < to - from && found < indices.length; p++){
+                int index = column._order[descending ? to - 1 - p : from + p];
+                if(EpochDays.isSet(matches,index)){
+                    if(skip > 0){
+                        skip--;
+                    }
+                    else{
+                        indices[found++] = index;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the bitmap of every number of rooms
+     */
+    private void indexRooms(int[] rooms){
+        int[] sorted = rooms.clone();
+        Arrays.sort(sorted);
+        int different = 0;
+        for(int i = 0; i < sorted.length; i++){
+            if(i == 0 || sorted[i] != sorted[i - 1]){
+                sorted[different++] = sorted[i];
+            }
+        }
+        _roomCounts = Arrays.copyOf(sorted,different);
+        _roomBitmaps = new long[different][_words];
+        for(int i = 0; i < rooms.length; i++){
+            long[] bitmap = _roomBitmaps[Arrays.binarySearch(_roomCounts,rooms[i])];
+            bitmap[i / WORD_BITS] |= 1L << i;
+        }
+    }
+
+    /**
+     * Sorts the apartments by a value and builds the checkpoints
+     */
+    private Column createColumn(double[] values){
+        Column column = new Column();
+        column._sorted = values.clone();
+        Arrays.sort(column._sorted);
+        column._order = new int[_size];
+        int[] equalBefore = new int[_size]; //apartments already placed at each first position of a value.
+        for(int i = 0; i < _size; i++){ //counting sort - the place of a value is the first position of it.
+            int first = lowerBound(column._sorted,values[i]);
+            column._order[first + equalBefore[first]++] = i;
+        }
+        column._segment = Math.max(1,(_size + SEGMENTS - 1) / SEGMENTS);
+        column._checkpoints = new long[SEGMENTS + 1][];
+        long[] bitmap = new long[_words];
+        int position = 0;
+        for(int k = 0; k <= SEGMENTS; k++){
+            for(int end = boundary(column,k); position < end; position++){
+                bitmap[column._order[position] / WORD_BITS] |= 1L << column._order[position];
+            }
+            column._checkpoints[k] = bitmap.clone();
+        }
+        return column;
+    }
+
+    /**
+     * Gets the position of checkpoint k in the sorted order
+     */
+    private int boundary(Column column, int k){
+        return (int)Math.min((long)k * column._segment,_size);
+    }
+
+    private static void setBits(Column column, int from, int to, long[] mask){
+        for(int p = from; p < to; p++){
+            int index = column._order[p];
+            mask[index / WORD_BITS] |= 1L << index;
+        }
+    }
+
+    private static int firstAtLeast(Column column, double value){
+        return lowerBound(column._sorted,value);
+    }
+
+    private static int firstAbove(Column column, double value){
+        int low = 0;
+        int high = column._sorted.length;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(column._sorted[middle] <= value){
+                low = middle + 1;
+            }
+            else{
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int lowerBound(double[] sorted, double value){
+        int low = 0;
+        int high = sorted.length;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(sorted[middle] < value){
+                low = middle + 1;
+            }
+            else{
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static void or(long[] target, long[] bitmap){
+        for(int w = 0; w < target.length; w++){
+            target[w] |= bitmap[w];
+        }
+    }
+
+    private static void and(long[] target, long[] bitmap){
+        for(int w = 0; w < target.length; w++){
+            target[w] &= bitmap[w];
+        }
+    }
+}
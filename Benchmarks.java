@@ -0,0 +1,374 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Micro benchmarks for the hot paths of Date, Person and Apartment.
+ *
+ * Every benchmark runs an operation over pre-built random inputs (fixed seed, so runs
+ * are comparable), first for some warmup rounds and then for measured rounds.
+ * The time per operation and the bytes allocated per operation are printed and
+ * written as JSON (in the same shape as JMH's JSON results) so later changes can be
+ * compared with an earlier run.
+ *
+ * Run with: java Benchmarks [output file] (default benchmark-results.json)
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public class Benchmarks
+{
+    private static final int INPUTS = 1 << 16; // number of random inputs (power of 2)
+    private static final int MASK = INPUTS - 1;
+    private static final int OPS_PER_ROUND = 2000000; // operations in one round
+    private static final int JOURNAL_OPS_PER_ROUND = 200000; // fewer, every operation writes ~70 bytes to a file
+    private static final int BULK_OPS_PER_ROUND = 200; // every operation goes over all the inputs
+    private static final int SEARCH_APARTMENTS = 1 << 20; // apartments in the searched portfolio
+    private static final int SIMULATION_OPS_PER_ROUND = 1; // one simulation is millions of events
+    private static final int SNAPSHOT_OPS_PER_ROUND = 1; // every operation reads a whole snapshot file
+    private static final int FOOTPRINT_APARTMENTS = 1 << 20; // apartments whose heap footprint is measured
+    private static final int FOOTPRINT_NAMES = 4096; // different tenant names among them (names repeat, ids don't)
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+    private static final long SEED = 19102023L;
+    private static final String DEFFAULT_OUTPUT = "benchmark-results.json";
+    private static long _sink; // results go here so the JIT can't drop the work
+
+    private static int[] _days; // random day values (some invalid)
+    private static int[] _months; // random month values (some invalid)
+    private static int[] _years; // random year values (some invalid)
+    private static Date[] _dates; // random valid dates
+    private static Person[] _persons; // random persons
+    private static Apartment[] _apartments; // random apartments
+    private static double[] _prices; // random offered prices
+    private static int[] _dayNumbers; // day numbers of _dates
+    private static int[] _endDayNumbers; // day numbers of the rental end dates of _apartments
+
+    /**
+     * The result of one benchmark
+     */
+    private static class Result
+    {
+        private String _name;
+        private double _nsPerOp; // mean time per operation
+        private double _nsError; // standard deviation between rounds
+        private double _bytesPerOp; // bytes allocated per operation (-1 if unknown)
+    }
+
+    /**
+     * Runs all the benchmarks
+     * @param args optional output file name
+     */
+    public static void main(String[] args) throws IOException
+    {
+        createInputs();
+        List<Result> results = new ArrayList<Result>();
+        results.add(measure("Date.<init> (validDateValue)",
+            i -> new Date(_days[i & MASK],_months[i & MASK],_years[i & MASK]).getDay()));
+        results.add(measure("Date.before",
+            i -> _dates[i & MASK].before(_dates[(i+1) & MASK]) ? 1 : 0));
+        results.add(measure("Date.equals",
+            i -> _dates[i & MASK].equals(_dates[(i+1) & MASK]) ? 1 : 0));
+        results.add(measure("Date.difference",
+            i -> _dates[i & MASK].difference(_dates[(i+1) & MASK])));
+        results.add(measure("Date.addYearsToDate",
+            i -> _dates[i & MASK].addYearsToDate(1 + (i & 3)).getYear()));
+        results.add(measure("Person.compareTo",
+            i -> _persons[i & MASK].compareTo(_persons[(i+1) & MASK])));
+        results.add(measure("Apartment.daysLeft",
+            i -> _apartments[i & MASK].daysLeft(_dates[(i+1) & MASK])));
+        IntToLongFunction changeTenant = i -> new Apartment(_apartments[i & MASK]).changeTenant(_dates[(i+1) & MASK],
+            _persons[(i+2) & MASK],_prices[i & MASK]) ? 1 : 0;
+        Result uncounted = measure("Apartment.changeTenant (on a copy)",changeTenant);
+        results.add(uncounted);
+        ApartmentMetrics installed = Metrics.current();
+        Metrics.install(new CounterMetrics());
+        Result counted = measure("Apartment.changeTenant (on a copy, CounterMetrics)",changeTenant);
+        results.add(counted);
+        Metrics.setTimingEnabled(true);
+        Result timed = measure("Apartment.changeTenant (on a copy, CounterMetrics and timing)",changeTenant);
+        results.add(timed);
+        Metrics.setTimingEnabled(false);
+        Metrics.install(installed);
+        System.out.println(String.format(Locale.ROOT,"Metrics cost on changeTenant: counters %+.1f%%, counters and timing %+.1f%%",
+            100 * (counted._nsPerOp / uncounted._nsPerOp - 1),100 * (timed._nsPerOp / uncounted._nsPerOp - 1)));
+        results.add(measure("Date.toString",
+            i -> _dates[i & MASK].toString().length()));
+        results.add(measure("Apartment.toString",
+            i -> _apartments[i & MASK].toString().length()));
+        StringBuilder report = new StringBuilder(256);
+        results.add(measure("Apartment.appendTo (reused StringBuilder)",
+            i -> { report.setLength(0); return _apartments[i & MASK].appendTo(report).length(); }));
+        Path journalFile = Files.createTempFile("benchmark",".journal");
+        try(ApartmentJournal journal = ApartmentJournal.open(journalFile)){
+            Apartment journaled = new Apartment(_apartments[0]);
+            journal.add(journaled);
+            results.add(measure("ApartmentJournal (setPrice events, accepted and rejected)",JOURNAL_OPS_PER_ROUND,
+                i -> { journaled.setPrice(_prices[i & MASK] - 4000); return 0; }));
+        }
+        finally{
+            Files.delete(journalFile);
+        }
+        long[] mask = EpochDays.newMask(INPUTS);
+        int[] left = new int[INPUTS];
+        results.add(measure("Date.before (all "+INPUTS+" dates per op)",BULK_OPS_PER_ROUND,
+            i -> { Date d = _dates[i & MASK]; long n = 0; for(int j = 0; j < INPUTS; j++){ n += _dates[j].before(d) ? 1 : 0; } return n; }));
+        results.add(measure("EpochDays.before (all "+INPUTS+" dates per op)",BULK_OPS_PER_ROUND,
+            i -> { EpochDays.before(_dayNumbers,INPUTS,_dayNumbers[i & MASK],mask); return mask[i & (mask.length - 1)]; }));
+        results.add(measure("Apartment.daysLeft (all "+INPUTS+" apartments per op)",BULK_OPS_PER_ROUND,
+            i -> { Date d = _dates[i & MASK]; long n = 0; for(int j = 0; j < INPUTS; j++){ n += _apartments[j].daysLeft(d); } return n; }));
+        results.add(measure("EpochDays.daysLeft (all "+INPUTS+" apartments per op)",BULK_OPS_PER_ROUND,
+            i -> { EpochDays.daysLeft(_endDayNumbers,INPUTS,_dayNumbers[i & MASK],left); return left[i & MASK]; }));
+        results.add(measure("Apartment filter (all "+INPUTS+" apartments per op)",BULK_OPS_PER_ROUND,
+            i -> { Date d = _dates[i & MASK]; long n = 0; for(int j = 0; j < INPUTS; j++){ n += matches(_apartments[j],d) ? 1 : 0; } return n; }));
+        ApartmentPortfolio portfolio = new ApartmentPortfolio(SEARCH_APARTMENTS);
+        for(int i = 0; i < SEARCH_APARTMENTS; i++){
+            portfolio.add(_apartments[i & MASK]);
+        }
+        ApartmentSearch search = new ApartmentSearch(portfolio);
+        results.add(measure("ApartmentSearch (first page of 20, "+SEARCH_APARTMENTS+" apartments)",BULK_OPS_PER_ROUND,
+            i -> search.search(searchQuery(_dates[i & MASK]),ApartmentSearch.Order.PRICE,0,20).getTotal()));
+        LeaseSimulation simulation = new LeaseSimulation();
+        Date simulationStart = new Date(1,1,2015);
+        results.add(measure("LeaseSimulation (10 years, "+SEARCH_APARTMENTS+" apartments)",SIMULATION_OPS_PER_ROUND,
+            i -> simulation.run(portfolio,simulationStart).getEvents()));
+        Path snapshotFile = Files.createTempFile("benchmark",".snapshot");
+        try{
+            ColumnarSnapshot.write(portfolio,snapshotFile);
+            int endDay = _dates[0].toEpochDay();
+            results.add(measure("ColumnarSnapshot scan (all columns, "+SEARCH_APARTMENTS+" apartments)",SNAPSHOT_OPS_PER_ROUND,
+                i -> scanSnapshot(snapshotFile,EnumSet.allOf(ColumnarSnapshot.Column.class),endDay)));
+            results.add(measure("ColumnarSnapshot scan (price and rental end only, "+SEARCH_APARTMENTS+" apartments)",
+                SNAPSHOT_OPS_PER_ROUND,i -> scanSnapshot(snapshotFile,
+                EnumSet.of(ColumnarSnapshot.Column.PRICE,ColumnarSnapshot.Column.RENTAL_END_DATE),endDay)));
+        }
+        finally{
+            Files.delete(snapshotFile);
+        }
+        printFootprint();
+        String output = args.length > 0 ? args[0] : DEFFAULT_OUTPUT;
+        writeJson(results,output);
+        System.out.println("Results written to "+output+" ("+_sink+")");
+    }
+
+    /**
+     * Measures and prints the heap taken by FOOTPRINT_APARTMENTS apartments, as an Apartment[]
+     * and as an ApartmentPortfolio (each apartment with its own tenant, name String and dates)
+     */
+    private static void printFootprint(){
+        Random random = new Random(SEED);
+        long base = usedHeapAfterGc();
+        Apartment[] apartments = new Apartment[FOOTPRINT_APARTMENTS];
+        for(int i = 0; i < FOOTPRINT_APARTMENTS; i++){
+            Person tenant = new Person("Tenant"+random.nextInt(FOOTPRINT_NAMES),1 + random.nextInt(28),1 + random.nextInt(12),1940 + random.nextInt(70),
+                String.valueOf(100000000 + random.nextInt(900000000)));
+            int year = 2000 + random.nextInt(30);
+            apartments[i] = new Apartment(1 + random.nextInt(6),40 + random.nextInt(120),3000 + random.nextInt(7000),
+                tenant,1 + random.nextInt(28),1 + random.nextInt(12),year,1 + random.nextInt(28),1 + random.nextInt(12),year + 1);
+        }
+        long objects = usedHeapAfterGc() - base;
+        ApartmentPortfolio portfolio = new ApartmentPortfolio(FOOTPRINT_APARTMENTS);
+        for(int i = 0; i < FOOTPRINT_APARTMENTS; i++){
+            portfolio.add(apartments[i]);
+        }
+        _sink += apartments.length;
+        apartments = null; //only the portfolio (and one String per different name) is left.
+        long columns = usedHeapAfterGc() - base;
+        _sink += portfolio.size();
+        System.out.println(String.format(Locale.ROOT,"Heap footprint of %d apartments: Apartment[] %.1f MB (%.0f B/apartment),"
+            +" ApartmentPortfolio %.1f MB (%.0f B/apartment)",FOOTPRINT_APARTMENTS,objects / 1e6,
+            (double)objects / FOOTPRINT_APARTMENTS,columns / 1e6,(double)columns / FOOTPRINT_APARTMENTS));
+    }
+
+    /**
+     * Gets the bytes used in the heap after asking for full garbage collections
+     */
+    private static long usedHeapAfterGc(){
+        long used = Long.MAX_VALUE;
+        for(int i = 0; i < 5; i++){ //System.gc is only a hint - take the lowest of some tries.
+            System.gc();
+            used = Math.min(used,ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    /**
+     * Reads some columns of a snapshot and sums the prices of the rentals that end before a day
+     */
+    private static long scanSnapshot(Path file, EnumSet<ColumnarSnapshot.Column> columns, int endDay){
+        long sum = 0;
+        try(ColumnarSnapshot.Reader reader = ColumnarSnapshot.Reader.open(file,columns)){
+            while(reader.next()){
+                double[] price = reader.getPrice();
+                int[] end = reader.getRentalEndDayNumbers();
+                for(int i = 0; i < reader.getRowCount(); i++){
+                    if(end[i] < endDay){
+                        sum += (long)price[i];
+                    }
+                }
+            }
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+        return sum;
+    }
+
+    /**
+     * Creates the random inputs
+     */
+    private static void createInputs(){
+        Random random = new Random(SEED);
+        _days = new int[INPUTS];
+        _months = new int[INPUTS];
+        _years = new int[INPUTS];
+        _dates = new Date[INPUTS];
+        _persons = new Person[INPUTS];
+        _apartments = new Apartment[INPUTS];
+        _prices = new double[INPUTS];
+        _dayNumbers = new int[INPUTS];
+        _endDayNumbers = new int[INPUTS];
+        for(int i = 0; i < INPUTS; i++){
+            _days[i] = random.nextInt(32); //0 and some 29-31 are invalid.
+            _months[i] = random.nextInt(14); //0 and 13 are invalid.
+            _years[i] = random.nextInt(50) == 0 ? 999 : 1950 + random.nextInt(80); //a few invalid years.
+            _dates[i] = new Date(1 + random.nextInt(28),1 + random.nextInt(12),2000 + random.nextInt(30));
+            _persons[i] = new Person("Tenant"+random.nextInt(FOOTPRINT_NAMES),1 + random.nextInt(28),1 + random.nextInt(12),
+                1940 + random.nextInt(70),String.valueOf(100000000 + random.nextInt(900000000)));
+            Date start = _dates[i];
+            _apartments[i] = new Apartment(1 + random.nextInt(6),40 + random.nextInt(120),
+                3000 + random.nextInt(7000),_persons[i],start.getDay(),start.getMonth(),start.getYear(),
+                start.getDay(),start.getMonth(),start.getYear() + 1 + random.nextInt(3));
+            _prices[i] = 3000 + random.nextInt(9000);
+            _dayNumbers[i] = _dates[i].toEpochDay();
+            _endDayNumbers[i] = _apartments[i].getRentalEndDayNumber();
+        }
+    }
+
+    /**
+     * Runs a benchmark and prints its result
+     * @param name the name of the benchmark
+     * @param op the operation, given the operation number
+     * @return the result
+     */
+    private static Result measure(String name, IntToLongFunction op){
+        return measure(name,OPS_PER_ROUND,op);
+    }
+
+    /**
+     * Checks an apartment the way a search without an index would:
+     * 3 or more rooms, 70 to 100 square metres, up to 6000 and free from d
+     */
+    private static boolean matches(Apartment a, Date d){
+        return a.getNoOfRooms() >= 3 && a.getArea() >= 70 && a.getArea() <= 100 && a.getPrice() <= 6000
+            && a.getRentalEndDate().before(d);
+    }
+
+    /**
+     * Creates the same query as matches for ApartmentSearch
+     */
+    private static ApartmentSearch.Query searchQuery(Date d){
+        ApartmentSearch.Query query = new ApartmentSearch.Query();
+        query.setRooms(3,Integer.MAX_VALUE);
+        query.setArea(70,100);
+        query.setPrice(0,6000);
+        query.setFreeFrom(d);
+        return query;
+    }
+
+    /**
+     * Runs a benchmark with a given number of operations per round and prints its result
+     * @param name the name of the benchmark
+     * @param opsPerRound the number of operations in one round
+     * @param op the operation, given the operation number
+     * @return the result
+     */
+    private static Result measure(String name, int opsPerRound, IntToLongFunction op){
+        for(int round = 0; round < WARMUP_ROUNDS; round++){
+            runRound(op,opsPerRound);
+        }
+        double[] times = new double[MEASURED_ROUNDS];
+        long bytesBefore = allocatedBytes();
+        for(int round = 0; round < MEASURED_ROUNDS; round++){
+            times[round] = (double)runRound(op,opsPerRound) / opsPerRound;
+        }
+        long bytesAfter = allocatedBytes();
+        Result result = new Result();
+        result._name = name;
+        double sum = 0;
+        for(int i = 0; i < times.length; i++){
+            sum += times[i];
+        }
+        result._nsPerOp = sum / times.length;
+        double squares = 0;
+        for(int i = 0; i < times.length; i++){
+            squares += (times[i] - result._nsPerOp) * (times[i] - result._nsPerOp);
+        }
+        result._nsError = Math.sqrt(squares / times.length);
+        result._bytesPerOp = bytesBefore < 0 ? -1 : (double)(bytesAfter - bytesBefore) / ((long)opsPerRound * MEASURED_ROUNDS);
+        System.out.println(String.format(Locale.ROOT,"%-40s %10.3f ns/op  +- %.3f  %8.1f B/op",
+            name,result._nsPerOp,result._nsError,result._bytesPerOp));
+        return result;
+    }
+
+    /**
+     * Runs one round of an operation
+     * @return the time the round took in nanoseconds
+     */
+    private static long runRound(IntToLongFunction op, int ops){
+        long sink = 0;
+        long start = System.nanoTime();
+        for(int i = 0; i < ops; i++){
+            sink += op.applyAsLong(i);
+        }
+        long time = System.nanoTime() - start;
+        _sink += sink;
+        return time;
+    }
+
+    /**
+     * Gets the number of bytes allocated by the current thread (-1 if the JVM can't tell)
+     */
+    private static long allocatedBytes(){
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(bean instanceof com.sun.management.ThreadMXBean){
+            return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the results as a JSON array in the format of JMH results
+     */
+    private static void writeJson(List<Result> results, String fileName) throws IOException{
+        try(PrintWriter out = new PrintWriter(new FileWriter(fileName))){
+            out.println("[");
+            for(int i = 0; i < results.size(); i++){
+                Result r = results.get(i);
+                out.println("  {");
+                out.println("    \"benchmark\" : \""+r._name+"\",");
+                out.println("    \"mode\" : \"avgt\",");
+                out.println("    \"warmupIterations\" : "+WARMUP_ROUNDS+",");
+                out.println("    \"measurementIterations\" : "+MEASURED_ROUNDS+",");
+                out.println(String.format(Locale.ROOT,
+                    "    \"primaryMetric\" : { \"score\" : %.4f, \"scoreError\" : %.4f, \"scoreUnit\" : \"ns/op\" },",
+                    r._nsPerOp,r._nsError));
+                out.println(String.format(Locale.ROOT,
+                    "    \"secondaryMetrics\" : { \"gc.alloc.rate.norm\" : { \"score\" : %.2f, \"scoreUnit\" : \"B/op\" } }",
+                    r._bytesPerOp));
+                out.println(i < results.size() - 1 ? "  }," : "  }");
+            }
+            out.println("]");
+        }
+    }
+}
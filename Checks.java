@@ -0,0 +1,681 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+
+/**
+ * Correctness checks for the classes that have behaviour worth pinning down beyond the
+ * assignment's examples.
+ *
+ * Every check is a plain static method that throws IllegalStateException with a message
+ * on the first wrong result. main runs all of them and prints one line per check, so the
+ * checks need no test framework or build tool.
+ *
+ * Run with: java Checks (exits with status 1 if a check fails)
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public class Checks
+{
+    /**
+     * A check that can be run by name.
+     */
+    private interface Check
+    {
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs all the checks
+     * @param args not used
+     */
+    public static void main(String[] args)
+    {
+        boolean ok = true;
+        ok &= run("Date tables (the same as the formulas, years 900-10100)",Checks::dateTables);
+        ok &= run("Date.plusDays (one day at a time over 2023-2024)",Checks::plusDaysWalk);
+        ok &= run("ExpiryScheduler (polled apartment stays polled)",Checks::expirySchedulerPolled);
+        ok &= run("ConcurrentApartment (snapshots consistent under mixed writers)",Checks::concurrentSnapshots);
+        ok &= run("ApartmentCodec (round trip, defaults, empty names, boundary dates)",Checks::codecRoundTrip);
+        ok &= run("ApartmentImporter (non-finite numbers, names not trimmed)",Checks::importerRows);
+        ok &= run("TenantRegistry.youngerThan (the same as comparing every person)",Checks::registryYoungerThan);
+        ok &= run("ApartmentJournal (remove and add again, events read back)",Checks::journalReAdd);
+        ok &= run("ApartmentJournal (a failed write is thrown by flush and close, not by setters)",Checks::journalFailure);
+        ok &= run("Apartment.extendRentalPeriod (rejected event)",Checks::rejectedExtension);
+        ok &= run("LeaseSimulation (leases ended before the start)",Checks::simulationExpiredLeases);
+        ok &= run("TenantChangeBatch (every rejection counted once)",Checks::batchRejectionsCountedOnce);
+        ok &= run("ColumnarSnapshot (round trip, damaged files)",Checks::snapshotDamaged);
+        if(!ok){
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs one check and prints its result
+     * @return true if it passed
+     */
+    private static boolean run(String name, Check check){
+        long start = System.nanoTime();
+        try{
+            check.run();
+            System.out.println("OK    "+name+" ("+(System.nanoTime() - start) / 1000000+" ms)");
+            return true;
+        }
+        catch(Exception | Error e){
+            System.out.println("FAIL  "+name+": "+e);
+            e.printStackTrace(System.out);
+            return false;
+        }
+    }
+
+    /**
+     * Throws IllegalStateException with a message if a condition is false
+     */
+    private static void check(boolean condition, String message){
+        if(!condition){
+            throw new IllegalStateException(message);
+        }
+    }
+
+    /**
+     * The calendar tables of Date give the same results as the formulas they replaced
+     * (the month switch and the modulo leap rule, countDays, and its inverse) for every
+     * day 0-32 of every month 0-13 of every year from 900 to 10100
+     */
+    private static void dateTables(){
+        for(int year = 900; year <= 10100; year++){
+            check(Date.isLeapYear(year) == Date.computeLeapYear(year),"isLeapYear "+year);
+            for(int month = 0; month <= 13; month++){
+                for(int day = 0; day <= 32; day++){
+                    check(Date.validDateValue(day,month,year) == switchValidDateValue(day,month,year),
+                        "validDateValue "+day+"/"+month+"/"+year);
+                    check(Date.calculateDate(day,month,year) == Date.countDays(day,month,year),
+                        "calculateDate "+day+"/"+month+"/"+year);
+                }
+            }
+        }
+        int first = Date.countDays(1,1,900);
+        int last = Date.countDays(31,12,10100);
+        for(int dayNumber = first; dayNumber <= last; dayNumber++){
+            int packed = Date.dateOfDayNumber(dayNumber);
+            check(packed == formulaDateOfDayNumber(dayNumber),"dateOfDayNumber "+dayNumber+": "+packed);
+            check(Date.countDays(packed%100,(packed/100)%100,packed/10000) == dayNumber,"round trip "+dayNumber);
+        }
+    }
+
+    /**
+     * validDateValue as it was before the tables: a switch on the month and the modulo leap rule
+     * (August has 30 days, as it always had in this class)
+     */
+    private static boolean switchValidDateValue(int day, int month, int year){
+        if(year < 1000 || year > 9999 || month < 1 || month > 12){
+            return false;
+        }
+        switch(month){
+            case 1:
+            case 3:
+            case 5:
+            case 7:
+            case 10:
+            case 12:
+                return day >= 1 && day <= 31;
+            case 4:
+            case 6:
+            case 8:
+            case 9:
+            case 11:
+                return day >= 1 && day <= 30;
+            default: //February.
+                return day >= 1 && day <= (Date.computeLeapYear(year) ? 29 : 28);
+        }
+    }
+
+    /**
+     * dateOfDayNumber as it was before the tables: the year estimated and fixed with
+     * countDays, then the month from the day of the year counted from 1 March
+     */
+    private static int formulaDateOfDayNumber(int dayNumber){
+        int year = (int)(dayNumber / 365.2425);
+        while(Date.countDays(1,3,year + 1) <= dayNumber){
+            year++;
+        }
+        while(Date.countDays(1,3,year) > dayNumber){
+            year--;
+        }
+        int dayOfYear = dayNumber - Date.countDays(1,3,year);
+        int month = (5 * dayOfYear + 2) / 153; //0 = March ... 11 = February.
+        int day = dayOfYear - (153 * month + 2) / 5 + 1;
+        month += 3;
+        if(month > 12){
+            month -= 12;
+            year++;
+        }
+        return year * 10000 + month * 100 + day;
+    }
+
+    /**
+     * plusDays(1) walks every valid date of 2023 and 2024 in order (31/08 is skipped, it is
+     * not a valid Date), fromEpochDay(toEpochDay(d) + 1) is the same next date, and
+     * plusDays(-1) walks back
+     */
+    private static void plusDaysWalk(){
+        Date d = new Date(1,1,2023);
+        Date last = new Date(31,12,2024);
+        int steps = 0;
+        while(d.before(last)){
+            Date next = d.plusDays(1);
+            int expected = d.getDay() == 30 && d.getMonth() == 8 ? 2 : 1; //the day number of 31/08 in between.
+            check(next.after(d) && next.difference(d) == expected,d+" plus 1 day is "+next);
+            check(Date.fromEpochDay(d.toEpochDay() + 1).equals(next),"fromEpochDay after "+d);
+            check(Date.fromEpochDay(next.toEpochDay()).equals(next),"round trip "+next);
+            check(next.plusDays(-1).equals(d),next+" minus 1 day is "+next.plusDays(-1));
+            d = next;
+            steps++;
+        }
+        check(steps == 365 + 366 - 2 - 1,steps+" steps"); //every date but two 31/08s, one step less.
+    }
+
+    /**
+     * Threads change the tenant and set the price of one ConcurrentApartment while other
+     * threads read snapshots. Every tenant change uses a tenant whose id is the day number of
+     * its rental start, so a snapshot is consistent if the tenant id matches the start date and
+     * the end date is a year after it.
+     */
+    private static void concurrentSnapshots() throws Exception{
+        int changers = 4;
+        int changesPerThread = 1500; //every change moves the dates ~11 months - stays in 4 digit years.
+        int pricers = 2;
+        int readers = 2;
+        Date firstStart = new Date(1,1,1100);
+        ConcurrentApartment apartment = new ConcurrentApartment(new Apartment(3,80,100,
+            new Person("Tenant",1,1,1000,tenantId(firstStart)),1,1,1100,1,1,1101));
+        AtomicInteger changed = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger(changers + pricers);
+        AtomicReference<String> failure = new AtomicReference<String>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for(int t = 0; t < changers; t++){
+            threads.add(new Thread(() -> {
+                for(int i = 0; i < changesPerThread; i++){
+                    Apartment current = apartment.snapshot();
+                    Date start = Date.fromEpochDay(current.getRentalEndDate().toEpochDay() - 30);
+                    Date born = Date.fromEpochDay(current.getTenant().getDateOfBirth().toEpochDay() + 1);
+                    Person candidate = new Person("Candidate",born.getDay(),born.getMonth(),born.getYear(),tenantId(start));
+                    if(apartment.changeTenant(start,candidate,current.getPrice() + 1)){
+                        changed.incrementAndGet();
+                    }
+                }
+                running.decrementAndGet();
+            }));
+        }
+        for(int t = 0; t < pricers; t++){
+            int seed = t;
+            threads.add(new Thread(() -> {
+                for(int i = 0; i < 20000; i++){
+                    apartment.setPrice(100 + (i * 7 + seed) % 50);
+                }
+                running.decrementAndGet();
+            }));
+        }
+        for(int t = 0; t < readers; t++){
+            threads.add(new Thread(() -> {
+                while(running.get() > 0 && failure.get() == null){
+                    String problem = inconsistency(apartment.snapshot());
+                    if(problem != null){
+                        failure.compareAndSet(null,problem);
+                    }
+                    apartment.daysLeft(firstStart); //plain reads run alongside.
+                    apartment.getTenant();
+                }
+            }));
+        }
+        for(Thread thread : threads){
+            thread.start();
+        }
+        for(Thread thread : threads){
+            thread.join();
+        }
+        check(failure.get() == null,"inconsistent snapshot: "+failure.get());
+        Apartment last = apartment.snapshot();
+        check(inconsistency(last) == null,"inconsistent final state: "+inconsistency(last));
+        check(changed.get() > 0,"no tenant change was accepted");
+        check(last.getTenant().getDateOfBirth().toEpochDay() - new Date(1,1,1000).toEpochDay() >= changed.get(),
+            changed.get()+" changes accepted but the tenant is not that much younger");
+    }
+
+    /**
+     * The id a tenant gets in concurrentSnapshots: the day number of its rental start (9 digits)
+     */
+    private static String tenantId(Date start){
+        return String.format("%09d",start.toEpochDay());
+    }
+
+    /**
+     * Describes what is wrong with a snapshot of concurrentSnapshots (null if it is consistent)
+     */
+    private static String inconsistency(Apartment a){
+        if(!a.getTenant().getId().equals(tenantId(a.getRentalStartDate()))){
+            return "tenant "+a.getTenant().getId()+" with start "+a.getRentalStartDate();
+        }
+        if(!a.getRentalStartDate().addYearsToDate(1).equals(a.getRentalEndDate())){
+            return "start "+a.getRentalStartDate()+" with end "+a.getRentalEndDate();
+        }
+        return null;
+    }
+
+    /**
+     * A polled apartment is not returned again after a change that keeps its end date,
+     * and is returned again after its end date changes
+     */
+    private static void expirySchedulerPolled(){
+        ExpiryScheduler scheduler = new ExpiryScheduler();
+        Apartment a = new Apartment(3,80,5000,new Person("Tenant",1,1,1990,"123456789"),1,1,2020,1,1,2021);
+        scheduler.add(a);
+        Date today = new Date(1,12,2020);
+        List<Apartment> first = scheduler.pollExpiringWithin(today,90);
+        check(first.size() == 1 && first.get(0) == a,"first poll: "+first.size()+" apartments");
+        a.setPrice(5500);
+        a.setArea(90);
+        check(scheduler.pollExpiringWithin(today,90).isEmpty(),"polled again after setPrice/setArea");
+        check(scheduler.nextExpiring(1).isEmpty(),"nextExpiring returns a polled apartment");
+        a.extendRentalPeriod(1);
+        check(scheduler.pollExpiringWithin(today,90).isEmpty(),"returned before its new end date");
+        List<Apartment> later = scheduler.pollExpiringWithin(new Date(1,12,2021),90);
+        check(later.size() == 1 && later.get(0) == a,"not returned after its end date changed");
+        check(scheduler.size() == 1,"size "+scheduler.size());
+    }
+
+    /**
+     * Apartments written with ApartmentCodec and read back are equal to the originals, in both
+     * byte orders: apartments whose values fell back to the defaults, empty and non-ASCII
+     * names, the first and last valid dates, 29 February, and random apartments
+     */
+    private static void codecRoundTrip(){
+        List<Apartment> apartments = new ArrayList<Apartment>();
+        apartments.add(new Apartment(-1,-5,-10,new Person("",0,0,0,"1"),0,13,999,32,0,10000)); //all defaults.
+        apartments.add(new Apartment(0,0,0,new Person(new String(""),1,1,1000,"000000000"),1,1,1000,31,12,9999)); //empty name, not the "" literal.
+        apartments.add(new Apartment(Short.MAX_VALUE,Double.MIN_VALUE,Double.MAX_VALUE,
+            new Person("\u05e9\u05dd \u05e2\u05dd \u05e8\u05d5\u05d5\u05d7",29,2,2000,"999999999"),29,2,2000,28,2,2001));
+        apartments.add(new Apartment(3,80,5000,new Person("Tenant",28,2,1900,"123456789"),30,8,2023,31,12,9999));
+        Random random = new Random(19102023L);
+        for(int i = 0; i < 10000; i++){
+            apartments.add(new Apartment(random.nextInt(8) - 1,random.nextDouble() * 200,random.nextDouble() * 9000,
+                new Person(i % 5 == 0 ? "" : "Tenant"+i,random.nextInt(32),random.nextInt(14),900 + random.nextInt(9200),
+                String.format("%09d",random.nextInt(1000000000))),random.nextInt(32),random.nextInt(14),
+                900 + random.nextInt(9200),random.nextInt(32),random.nextInt(14),900 + random.nextInt(9200)));
+        }
+        for(ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN,ByteOrder.LITTLE_ENDIAN}){
+            ByteBuffer buf = ByteBuffer.allocate(1 << 20).order(order);
+            for(Apartment a : apartments){
+                int position = buf.position();
+                ApartmentCodec.write(a,buf);
+                check(buf.position() - position == ApartmentCodec.encodedSize(a),"encodedSize of "+a);
+            }
+            buf.flip();
+            for(Apartment a : apartments){
+                Apartment read = ApartmentCodec.read(buf);
+                check(read.equals(a),order+": read "+read+", wrote "+a);
+                check(read.getTenant().getName().equals(a.getTenant().getName()),order+": name of "+a);
+                check(read.getTenant().getDateOfBirth().equals(a.getTenant().getDateOfBirth()),order+": date of birth of "+a);
+            }
+            check(!buf.hasRemaining(),order+": "+buf.remaining()+" bytes left");
+        }
+    }
+
+    /**
+     * The importer skips rows whose area or price is not a finite decimal number, and passes
+     * the name to Person as it is (only an empty name gets the default)
+     */
+    private static void importerRows() throws Exception{
+        String feed = "3,80,5000,Dana,03/04/1990,012345678,01/02/2020,01/02/2021\n"
+            + "3,NaN,5000,Dana,03/04/1990,012345678,01/02/2020,01/02/2021\n"
+            + "3,80,Infinity,Dana,03/04/1990,012345678,01/02/2020,01/02/2021\n"
+            + "3,0x1p6,5000,Dana,03/04/1990,012345678,01/02/2020,01/02/2021\n"
+            + "3,80,1e400,Dana,03/04/1990,012345678,01/02/2020,01/02/2021\n"
+            + "3,80,5000d,Dana,03/04/1990,012345678,01/02/2020,01/02/2021\n"
+            + "3,8e1,5000,   ,03/04/1990,012345678,01/02/2020,01/02/2021\n"
+            + "3,80,5000, Dana Levi ,03/04/1990, 012345678 ,01/02/2020,01/02/2021\n"
+            + "3,80,5000,,03/04/1990,012345678,01/02/2020,01/02/2021\n";
+        List<Apartment> apartments = new ArrayList<Apartment>();
+        ApartmentImporter.ImportReport report = ApartmentImporter.importFrom(new StringReader(feed),apartments::add);
+        check(report.getMalformedRows() == 5,report.getMalformedRows()+" malformed rows, expected 5");
+        check(apartments.size() == 4,apartments.size()+" apartments");
+        check(apartments.get(1).getArea() == 80,"area "+apartments.get(1).getArea());
+        check(apartments.get(1).getTenant().getName().equals("   "),"blank name became "+apartments.get(1).getTenant().getName());
+        check(apartments.get(2).getTenant().getName().equals(" Dana Levi "),"name "+apartments.get(2).getTenant().getName());
+        check(apartments.get(2).getTenant().getId().equals("012345678"),"id "+apartments.get(2).getTenant().getId());
+        check(apartments.get(3).getTenant().getName().equals("Someone") && report.getNameDefaults() == 1,
+            "empty name "+apartments.get(3).getTenant().getName());
+    }
+
+    /**
+     * youngerThan finds the same persons as comparing every registered person, in date of
+     * birth order, while persons are registered, replaced and removed
+     */
+    private static void registryYoungerThan(){
+        TenantRegistry registry = new TenantRegistry();
+        List<Person> registered = new ArrayList<Person>();
+        Random random = new Random(19102023L);
+        for(int i = 0; i < 3000; i++){
+            String id = String.format("%09d",1 + random.nextInt(2000)); //not 000000000, which is never registered.
+            Person p = new Person("Tenant",1 + random.nextInt(28),1 + random.nextInt(12),1990 + random.nextInt(3),id);
+            registered.removeIf(old -> old.getId().equals(id));
+            if(i % 7 == 0){
+                registry.remove(id);
+            }
+            else
+            {
+                registered.add(registry.intern(p));
+            }
+            if(i % 100 == 0){
+                Person tenant = new Person("Tenant",1,1 + random.nextInt(12),1991,"123456789");
+                List<Person> younger = registry.youngerThan(tenant);
+                long expected = registered.stream().filter(r -> r.getDateOfBirth().after(tenant.getDateOfBirth())).count();
+                check(younger.size() == expected,"found "+younger.size()+" younger persons, expected "+expected);
+                for(int j = 0; j < younger.size(); j++){
+                    check(younger.get(j).getDateOfBirth().after(tenant.getDateOfBirth())
+                        && (j == 0 || !younger.get(j).getDateOfBirth().before(younger.get(j - 1).getDateOfBirth())),
+                        "person "+j+" born "+younger.get(j).getDateOfBirth());
+                }
+            }
+        }
+        check(registry.size() == registered.size(),"size "+registry.size()+", expected "+registered.size());
+    }
+
+    /**
+     * A removed and added again apartment is journaled again, and every event read back
+     * (also the types without tenants) can be printed
+     */
+    private static void journalReAdd() throws Exception{
+        Path file = Files.createTempFile("checks",".journal");
+        try{
+            Apartment a = new Apartment(3,80,5000,new Person("Tenant",1,1,1990,"123456789"),1,1,2020,1,1,2021);
+            try(ApartmentJournal journal = ApartmentJournal.open(file)){
+                int key = journal.add(a);
+                a.setPrice(5100);
+                journal.remove(a);
+                a.setPrice(5200); //not journaled.
+                check(journal.add(a) == key,"a new key after add again");
+                a.setPrice(5300);
+                a.setArea(90);
+                a.extendRentalPeriod(-1);
+                a.changeTenant(new Date(1,12,2020),new Person("Younger",1,1,2000,"987654321"),6000);
+                check(journal.getEventCount() == 5,"journaled "+journal.getEventCount()+" events, expected 5");
+            }
+            List<ApartmentEvent> events = new ArrayList<ApartmentEvent>();
+            ApartmentJournal.read(file,Collections.singletonList(a),events::add);
+            check(events.size() == 5,"read "+events.size()+" events, expected 5");
+            check(events.get(1).getNewPrice() == 5300,"second event price "+events.get(1).getNewPrice());
+            for(ApartmentEvent event : events){
+                check(event.toString().startsWith(event.getType().name()),"toString "+event);
+            }
+        }
+        finally{
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * An event the journal can't record (bigger than its buffer) doesn't throw from the
+     * apartment's setters; the journal records nothing more and flush and close throw
+     */
+    private static void journalFailure() throws Exception{
+        Path file = Files.createTempFile("checks",".journal");
+        try{
+            Apartment a = new Apartment(3,80,5000,new Person("Tenant",1,1,1990,"123456789"),1,1,2020,1,1,2021);
+            ApartmentJournal journal = ApartmentJournal.open(file,128); //room for events without tenants.
+            journal.add(a);
+            a.setPrice(5100);
+            a.setTenant(new Person("Tenant with a name much too long for a journal buffer of 128 bytes",1,1,1990,"123456789"));
+            a.setPrice(5200);
+            check(a.getPrice() == 5200,"setPrice after the failure was not applied");
+            check(journal.getEventCount() == 1,journal.getEventCount()+" events journaled, expected 1");
+            boolean thrown = false;
+            try{
+                journal.flush();
+            }
+            catch(IOException e){
+                thrown = true;
+            }
+            check(thrown,"flush did not throw");
+            thrown = false;
+            try{
+                journal.close();
+            }
+            catch(IOException e){
+                thrown = true;
+            }
+            check(thrown,"close did not throw");
+            a.setPrice(5300); //no longer journaled.
+            long read = ApartmentJournal.read(file,Collections.singletonList(a),e -> {});
+            check(read == 1,read+" events in the file, expected only the one before the failure");
+        }
+        finally{
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * A rejected extension asks for no date: its event keeps the old end date and the
+     * apartment does not change
+     */
+    private static void rejectedExtension(){
+        Apartment a = new Apartment(3,80,5000,new Person("Tenant",1,1,1990,"123456789"),1,1,2020,1,1,2021);
+        List<ApartmentEvent> events = new ArrayList<ApartmentEvent>();
+        a.addApartmentListener(new ApartmentListener(){
+            public void mutationAttempted(ApartmentEvent event){
+                events.add(event);
+            }
+            public void apartmentChanged(Apartment apartment){
+            }
+        });
+        a.extendRentalPeriod(-2);
+        a.extendRentalPeriod(2);
+        check(events.size() == 2,events.size()+" events");
+        check(!events.get(0).isAccepted() && events.get(0).getNewRentalEndDate().equals(events.get(0).getOldRentalEndDate()),
+            "rejected extension "+events.get(0));
+        check(events.get(1).isAccepted() && events.get(1).getNewRentalEndDate().toEpochDay() == new Date(1,1,2023).toEpochDay(),
+            "accepted extension "+events.get(1));
+        check(a.getRentalEndDate().toEpochDay() == new Date(1,1,2023).toEpochDay(),"end date "+a.getRentalEndDate());
+    }
+
+    /**
+     * Leases that ended years before the start of a simulation expire once, on the start day,
+     * instead of all the missed years of turnover counting in year 0
+     */
+    private static void simulationExpiredLeases(){
+        ApartmentPortfolio portfolio = new ApartmentPortfolio();
+        int count = 1000;
+        for(int i = 0; i < count; i++){
+            portfolio.add(new Apartment(3,80,5000,new Person("Tenant",1,1,1970,"123456789"),1,1,1999,1,1,2000));
+        }
+        Date start = new Date(1,1,2015);
+        LeaseSimulation simulation = new LeaseSimulation();
+        simulation.setYears(1);
+        LeaseSimulation.Result result = simulation.run(portfolio,start);
+        long turnover = result.getRenewals(0) + result.getNewTenants(0);
+        check(turnover >= count && turnover < 2 * count,"year 0 turnover "+turnover+" for "+count+" apartments");
+        for(int i = 0; i < count; i++){
+            check(result.getRentalEndDate(i).toEpochDay() > start.toEpochDay(),"apartment "+i+" ends "+result.getRentalEndDate(i));
+        }
+    }
+
+    /**
+     * A winner that an earlier applied change makes ineligible is counted once in the metrics,
+     * like the proposals rejected by the check
+     */
+    private static void batchRejectionsCountedOnce(){
+        Apartment a = new Apartment(3,80,5000,new Person("Tenant",1,1,1990,"123456789"),1,1,2020,1,1,2021);
+        Apartment b = new Apartment(3,80,5000,new Person("Tenant",1,1,1990,"123456789"),1,1,2020,1,1,2021);
+        ApartmentListener raiseOther = new ApartmentListener(){ //the first change raises the other price.
+            public void apartmentChanged(Apartment apartment){
+                Apartment other = apartment == a ? b : a;
+                if(other.getPrice() != 9000){
+                    other.setPrice(9000);
+                }
+            }
+        };
+        a.addApartmentListener(raiseOther);
+        b.addApartmentListener(raiseOther);
+        Date start = new Date(1,12,2020);
+        Person younger = new Person("Younger",1,1,2000,"987654321");
+        List<TenantChangeBatch.Proposal> proposals = new ArrayList<TenantChangeBatch.Proposal>();
+        proposals.add(new TenantChangeBatch.Proposal(a,start,younger,6000));
+        proposals.add(new TenantChangeBatch.Proposal(b,start,younger,6000));
+        proposals.add(new TenantChangeBatch.Proposal(a,start,younger,4000)); //PRICE_TOO_LOW by the check.
+        CounterMetrics metrics = new CounterMetrics();
+        ApartmentMetrics previous = Metrics.current();
+        Metrics.install(metrics);
+        try{
+            check(new TenantChangeBatch().run(proposals) == 1,"not exactly one change applied");
+        }
+        finally{
+            Metrics.install(previous);
+        }
+        long rejected = 0;
+        for(TenantChangeBatch.Proposal proposal : proposals){
+            rejected += proposal.getStatus() != TenantChangeStatus.ELIGIBLE ? 1 : 0;
+        }
+        check(rejected == 2,rejected+" proposals rejected, expected 2");
+        check(metrics.getRejections(TenantChangeStatus.PRICE_TOO_LOW) == 2,
+            "counted "+metrics.getRejections(TenantChangeStatus.PRICE_TOO_LOW)+" PRICE_TOO_LOW rejections, expected 2");
+    }
+
+    /**
+     * A snapshot reads back equal to the portfolio it was written from, and a damaged snapshot
+     * (any byte changed, cut short, or a dictionary index past the dictionary) throws IOException
+     * and nothing else
+     */
+    private static void snapshotDamaged() throws Exception{
+        ApartmentPortfolio portfolio = new ApartmentPortfolio();
+        for(int i = 0; i < 200; i++){
+            portfolio.add(new Apartment(1 + i % 6,40 + i,3000 + 10 * i,new Person("Tenant"+(i % 7),1 + i % 28,1 + i % 12,
+                1950 + i % 50,String.format("%09d",100000000 + i)),1 + i % 28,1 + i % 12,2000 + i % 20,1,1 + i % 12,2021 + i % 5));
+        }
+        Path file = Files.createTempFile("checks",".snapshot");
+        try{
+            ColumnarSnapshot.write(portfolio,file);
+            ApartmentPortfolio read = ColumnarSnapshot.read(file);
+            check(read.size() == portfolio.size(),"read "+read.size()+" apartments");
+            for(int i = 0; i < portfolio.size(); i++){
+                check(read.toApartment(i).equals(portfolio.toApartment(i))
+                    && read.getTenantName(i).equals(portfolio.getTenantName(i)),"apartment "+i);
+            }
+            byte[] good = Files.readAllBytes(file);
+            for(int b = 0; b < good.length; b++){ //every byte changed.
+                byte[] bad = good.clone();
+                bad[b] ^= 0x5A;
+                Files.write(file,bad);
+                readDamaged(file,"byte "+b+" changed");
+            }
+            for(int length = 0; length < good.length; length++){ //every length cut short.
+                Files.write(file,Arrays.copyOf(good,length));
+                readDamaged(file,"cut to "+length+" bytes");
+            }
+            Files.write(file,withColumn(good,ColumnarSnapshot.Column.TENANT_NAME,new byte[]{1,1,'A',0,5})); //index 5 in a dictionary of 1.
+            check(readDamaged(file,"dictionary index") instanceof IOException,"bad dictionary index was read");
+            ByteBuffer rooms = ByteBuffer.allocate(210);
+            for(int i = 0; i < 199; i++){
+                putVarint(rooms,3);
+            }
+            putVarint(rooms,1L << 40); //rooms that don't fit an int.
+            checkOutOfRange(file,withColumn(good,ColumnarSnapshot.Column.NO_OF_ROOMS,
+                Arrays.copyOf(rooms.array(),rooms.position())),"rooms of 2^40");
+            ByteBuffer price = ByteBuffer.allocate(8 * 200).order(ByteOrder.LITTLE_ENDIAN);
+            for(int i = 0; i < 200; i++){
+                price.putDouble(i == 100 ? -1 : 3000);
+            }
+            checkOutOfRange(file,withColumn(good,ColumnarSnapshot.Column.PRICE,price.array()),"price of -1");
+            ByteBuffer start = ByteBuffer.allocate(210);
+            putVarint(start,2L * Date.calculateDate(1,1,2000)); //zigzag of the first day number,
+            for(int i = 1; i < 199; i++){
+                putVarint(start,0); //then the same day,
+            }
+            putVarint(start,2L * 3000000); //then a day after the year 9999.
+            checkOutOfRange(file,withColumn(good,ColumnarSnapshot.Column.RENTAL_START_DATE,
+                Arrays.copyOf(start.array(),start.position())),"start date after 9999");
+        }
+        finally{
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Reads a damaged snapshot (all the columns, then two of them)
+     * @return the IOException, or null if it was read without one
+     * @throws IllegalStateException if anything but an IOException was thrown
+     */
+    private static IOException readDamaged(Path file, String damage){
+        try{
+            ColumnarSnapshot.read(file);
+            try(ColumnarSnapshot.Reader reader = ColumnarSnapshot.Reader.open(file,
+                EnumSet.of(ColumnarSnapshot.Column.PRICE,ColumnarSnapshot.Column.RENTAL_END_DATE))){
+                while(reader.next()){
+                }
+            }
+            return null;
+        }
+        catch(IOException e){
+            return e;
+        }
+        catch(RuntimeException | OutOfMemoryError e){
+            throw new IllegalStateException(damage+": "+e,e);
+        }
+    }
+
+    /**
+     * Replaces a column of the first row group of a snapshot with the given
+     * encoded bytes
+     */
+    private static byte[] withColumn(byte[] snapshot, ColumnarSnapshot.Column column, byte[] encoded){
+        ByteBuffer buf = ByteBuffer.wrap(snapshot);
+        int columns = ColumnarSnapshot.Column.values().length;
+        int name = column.ordinal();
+        int group = 8; //after the file header.
+        int offset = group + 4 + 8 * columns;
+        for(int c = 0; c < name; c++){
+            offset += buf.getInt(group + 4 + 4 * c);
+        }
+        int oldSize = buf.getInt(group + 4 + 4 * name);
+        Deflater deflater = new Deflater();
+        deflater.setInput(encoded);
+        deflater.finish();
+        byte[] compressed = new byte[encoded.length + 64];
+        int size = deflater.deflate(compressed);
+        deflater.end();
+        ByteBuffer out = ByteBuffer.allocate(snapshot.length - oldSize + size);
+        out.put(snapshot,0,offset).put(compressed,0,size).put(snapshot,offset + oldSize,snapshot.length - offset - oldSize);
+        out.putInt(group + 4 + 4 * name,size);
+        out.putInt(group + 4 + 4 * (columns + name),encoded.length);
+        return out.array();
+    }
+
+    /**
+     * Checks that a snapshot with a value out of range throws an IOException that says so
+     */
+    private static void checkOutOfRange(Path file, byte[] snapshot, String damage) throws IOException{
+        Files.write(file,snapshot);
+        IOException e = readDamaged(file,damage);
+        check(e != null && e.getMessage().startsWith("Damaged snapshot"),damage+" was read: "+e);
+    }
+
+    private static void putVarint(ByteBuffer buf, long value){
+        while((value & ~0x7FL) != 0){
+            buf.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte)value);
+    }
+
+}
@@ -0,0 +1,813 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Portfolio snapshots in a columnar file, for analytics.
+ *
+ * The apartments are written in row groups of up to ROW_GROUP_SIZE apartments. In every
+ * row group each field is its own column, encoded and then compressed on its own (Deflater):
+ * <pre>
+ *   NO_OF_ROOMS           varint
+ *   AREA, PRICE           8-byte doubles
+ *   RENTAL_START_DATE,
+ *   RENTAL_END_DATE,
+ *   TENANT_DATE_OF_BIRTH  day numbers, each as the zigzag varint difference from the one before
+ *   TENANT_ID             varint length + UTF-8 bytes
+ *   TENANT_NAME           dictionary (varint count, then varint length + UTF-8 bytes of every
+ *                         different name) and a varint dictionary index for every apartment
+ * </pre>
+ * File layout: a header (magic, version) followed by row groups:
+ * <pre>
+ *   int     number of apartments in the group
+ *   int[8]  compressed size of every column
+ *   int[8]  encoded (not compressed) size of every column
+ *   bytes   the compressed columns, in Column order
+ * </pre>
+ * Because the sizes come first, a Reader reads only the columns it was asked for and seeks
+ * past the others (projection pushdown). A query over prices and end dates reads those
+ * two columns and nothing else.
+ *
+ * A damaged file throws IOException: the Reader checks the sizes, and every decoded value
+ * (rooms from 0 to Integer.MAX_VALUE, area and price at least 0, day numbers in the years
+ * 1000-9999, dictionary indices inside the dictionary).
+ *
+ * Both sides stream: the Writer keeps one row group in memory, the Reader one row group
+ * of the asked columns.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public final class ColumnarSnapshot
+{
+    /** The most apartments in a row group. */
+    public static final int ROW_GROUP_SIZE = 1 << 16;
+
+    private static final int MAGIC = 0x41504331; // "APC1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int COLUMNS = Column.values().length;
+    private static final int GROUP_HEADER_SIZE = 4 + 2 * 4 * COLUMNS;
+    private static final int MAX_INFLATE_RATIO = 1032; // the most a Deflater stream can grow when inflated
+    private static final int FIRST_DAY = Date.calculateDate(1,1,1000); // day number of the first valid date
+    private static final int LAST_DAY = Date.calculateDate(31,12,9999); // day number of the last valid date
+
+    /**
+     * The columns of a snapshot (in file order).
+     */
+    public enum Column
+    {
+        NO_OF_ROOMS,
+        AREA,
+        PRICE,
+        RENTAL_START_DATE,
+        RENTAL_END_DATE,
+        TENANT_ID,
+        TENANT_NAME,
+        TENANT_DATE_OF_BIRTH
+    }
+
+    /**
+     * No instances - use Writer and Reader.
+     */
+    private ColumnarSnapshot()
+    {
+    }
+
+    /**
+     * Writes a whole portfolio to a snapshot file (replaces the file if it exists)
+     * @param portfolio the portfolio
+     * @param path the file
+     * @throws IOException if the file can't be written
+     */
+    public static void write(ApartmentPortfolio portfolio, Path path) throws IOException{
+        try(Writer writer = Writer.open(path)){
+            writer.addAll(portfolio);
+        }
+    }
+
+    /**
+     * Reads a whole snapshot file into a new portfolio
+     * @param path the file
+     * @return a portfolio with all the apartments of the snapshot
+     * @throws IOException if the file can't be read, is not a snapshot file or is damaged
+     */
+    public static ApartmentPortfolio read(Path path) throws IOException{
+        ApartmentPortfolio portfolio = new ApartmentPortfolio();
+        try(Reader reader = Reader.open(path,EnumSet.allOf(Column.class))){
+            while(reader.next()){
+                for(int i = 0; i < reader.getRowCount(); i++){
+                    portfolio.add(reader._rooms[i],reader._area[i],reader._price[i],reader._start[i],
+                        reader._end[i],reader._dateOfBirth[i],reader._name[i],reader._id[i]);
+                }
+            }
+        }
+        return portfolio;
+    }
+
+    /**
+     * Writes apartments to a snapshot file, one row group at a time.
+     */
+    public static class Writer implements Closeable
+    {
+        private final FileChannel _channel;
+        private final Deflater _deflater;
+        private int _rows; // apartments in the current row group
+        private long _rowCount; // apartments written to the file or waiting in the row group
+        private final int[] _rooms = new int[ROW_GROUP_SIZE];
+        private final double[] _area = new double[ROW_GROUP_SIZE];
+        private final double[] _price = new double[ROW_GROUP_SIZE];
+        private final int[] _start = new int[ROW_GROUP_SIZE];
+        private final int[] _end = new int[ROW_GROUP_SIZE];
+        private final int[] _dateOfBirth = new int[ROW_GROUP_SIZE];
+        private final String[] _id = new String[ROW_GROUP_SIZE];
+        private final String[] _name = new String[ROW_GROUP_SIZE];
+        private final Bytes _encoded = new Bytes(); // one column before compression
+        private final Bytes[] _compressed = new Bytes[COLUMNS];
+
+        /**
+         * Private constructor - use open.
+         */
+        private Writer(FileChannel channel, int level)
+        {
+            _channel = channel;
+            _deflater = new Deflater(level);
+            for(int c = 0; c < COLUMNS; c++){
+                _compressed[c] = new Bytes();
+            }
+        }
+
+        /**
+         * Creates a snapshot file (replaces the file if it exists) with the default compression
+         * @param path the file
+         * @return the writer
+         * @throws IOException if the file can't be created
+         */
+        public static Writer open(Path path) throws IOException{
+            return open(path,Deflater.DEFAULT_COMPRESSION);
+        }
+
+        /**
+         * Creates a snapshot file (replaces the file if it exists)
+         * @param path the file
+         * @param level the Deflater compression level (0-9, or -1 for the default)
+         * @return the writer
+         * @throws IOException if the file can't be created
+         */
+        public static Writer open(Path path, int level) throws IOException{
+            if(level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION){
+                throw new IllegalArgumentException("Invalid compression level: "+level);
+            }
+            FileChannel channel = FileChannel.open(path,StandardOpenOption.CREATE,StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+            try{
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                writeFully(channel,header);
+                return new Writer(channel,level);
+            }
+            catch(IOException | RuntimeException e){
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Adds an apartment (written when its row group is full, or on close)
+         * @param a the apartment
+         * @throws IOException if a full row group can't be written
+         */
+        public void add(Apartment a) throws IOException{
+            Person tenant = a.getTenantNoCopy();
+            add(a.getNoOfRooms(),a.getArea(),a.getPrice(),a.getRentalStartDayNumber(),a.getRentalEndDayNumber(),
+                tenant.getDateOfBirth().toEpochDay(),tenant.getName(),tenant.getId());
+        }
+
+        /**
+         * Adds all the apartments of a portfolio, reading its columns directly
+         * @param portfolio the portfolio
+         * @throws IOException if a full row group can't be written
+         */
+        public void addAll(ApartmentPortfolio portfolio) throws IOException{
+            for(int i = 0; i < portfolio.size(); i++){
+                add(portfolio.getNoOfRooms(i),portfolio.getArea(i),portfolio.getPrice(i),
+                    portfolio.getRentalStartDayNumber(i),portfolio.getRentalEndDayNumber(i),
+                    portfolio.getTenantDateOfBirthDayNumber(i),portfolio.getTenantName(i),portfolio.getTenantId(i));
+            }
+        }
+
+        /**
+         * Gets the number of apartments added
+         * @return the number of apartments added
+         */
+        public long getRowCount(){
+            return _rowCount;
+        }
+
+        /**
+         * Writes the last row group and closes the file
+         * @throws IOException if it can't be written
+         */
+        public void close() throws IOException{
+            try{
+                if(_rows > 0){
+                    writeRowGroup();
+                }
+            }
+            finally{
+                _deflater.end();
+                _channel.close();
+            }
+        }
+
+        private void add(int rooms, double area, double price, int start, int end, int dateOfBirth,
+            String name, String id) throws IOException{
+            _rooms[_rows] = rooms;
+            _area[_rows] = area;
+            _price[_rows] = price;
+            _start[_rows] = start;
+            _end[_rows] = end;
+            _dateOfBirth[_rows] = dateOfBirth;
+            _name[_rows] = name;
+            _id[_rows] = id;
+            _rows++;
+            _rowCount++;
+            if(_rows == ROW_GROUP_SIZE){
+                writeRowGroup();
+            }
+        }
+
+        /**
+         * Encodes, compresses and writes the current row group
+         */
+        private void writeRowGroup() throws IOException{
+            ByteBuffer header = ByteBuffer.allocate(GROUP_HEADER_SIZE);
+            header.putInt(_rows);
+            int[] encodedSizes = new int[COLUMNS];
+            for(Column column : Column.values()){
+                _encoded.clear();
+                encode(column);
+                encodedSizes[column.ordinal()] = _encoded._size;
+                compress(_encoded,_compressed[column.ordinal()]);
+                header.putInt(_compressed[column.ordinal()]._size);
+            }
+            for(int c = 0; c < COLUMNS; c++){
+                header.putInt(encodedSizes[c]);
+            }
+            header.flip();
+            ByteBuffer[] buffers = new ByteBuffer[COLUMNS + 1];
+            buffers[0] = header;
+            for(int c = 0; c < COLUMNS; c++){
+                buffers[c + 1] = ByteBuffer.wrap(_compressed[c]._data,0,_compressed[c]._size);
+            }
+            while(buffers[COLUMNS].hasRemaining()){ //one gathering write for the whole group.
+                _channel.write(buffers);
+            }
+            Arrays.fill(_id,0,_rows,null); //don't keep the Strings alive.
+            Arrays.fill(_name,0,_rows,null);
+            _rows = 0;
+        }
+
+        /**
+         * Encodes one column of the current row group into _encoded
+         */
+        private void encode(Column column){
+            switch(column){
+                case NO_OF_ROOMS:
+                    for(int i = 0; i < _rows; i++){
+                        _encoded.putVarint(_rooms[i]);
+                    }
+                    break;
+                case AREA:
+                    for(int i = 0; i < _rows; i++){
+                        _encoded.putDouble(_area[i]);
+                    }
+                    break;
+                case PRICE:
+                    for(int i = 0; i < _rows; i++){
+                        _encoded.putDouble(_price[i]);
+                    }
+                    break;
+                case RENTAL_START_DATE:
+                    putDeltas(_start);
+                    break;
+                case RENTAL_END_DATE:
+                    putDeltas(_end);
+                    break;
+                case TENANT_ID:
+                    for(int i = 0; i < _rows; i++){
+                        _encoded.putString(_id[i]);
+                    }
+                    break;
+                case TENANT_NAME:
+                    putDictionary(_name);
+                    break;
+                default: //TENANT_DATE_OF_BIRTH.
+                    putDeltas(_dateOfBirth);
+                    break;
+            }
+        }
+
+        private void putDeltas(int[] days){
+            int previous = 0;
+            for(int i = 0; i < _rows; i++){
+                int delta = days[i] - previous;
+                _encoded.putVarint((delta << 1) ^ (delta >> 31)); //zigzag - small negative numbers stay small.
+                previous = days[i];
+            }
+        }
+
+        private void putDictionary(String[] values){
+            HashMap<String, Integer> codes = new HashMap<String, Integer>();
+            int[] indices = new int[_rows];
+            String[] dictionary = new String[_rows];
+            for(int i = 0; i < _rows; i++){
+                Integer code = codes.get(values[i]);
+                if(code == null){
+                    code = codes.size();
+                    codes.put(values[i],code);
+                    dictionary[code] = values[i];
+                }
+                indices[i] = code;
+            }
+            _encoded.putVarint(codes.size());
+            for(int d = 0; d < codes.size(); d++){
+                _encoded.putString(dictionary[d]);
+            }
+            for(int i = 0; i < _rows; i++){
+                _encoded.putVarint(indices[i]);
+            }
+        }
+
+        private void compress(Bytes source, Bytes target){
+            _deflater.reset();
+            _deflater.setInput(source._data,0,source._size);
+            _deflater.finish();
+            target.clear();
+            while(!_deflater.finished()){
+                target.ensure(Math.max(64,source._size / 4));
+                target._size += _deflater.deflate(target._data,target._size,target._data.length - target._size);
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot file, one row group at a time, only the columns it was asked for.
+     */
+    public static class Reader implements Closeable
+    {
+        private final FileChannel _channel;
+        private final Inflater _inflater;
+        private final EnumSet<Column> _columns; // the columns read
+        private long _position; // file position of the next row group
+        private long _bytesRead; // bytes read from the file
+        private int _rows; // apartments in the current row group
+        private byte[] _compressed = new byte[0];
+        private byte[] _encoded = new byte[0];
+        private int[] _rooms;
+        private double[] _area;
+        private double[] _price;
+        private int[] _start;
+        private int[] _end;
+        private int[] _dateOfBirth;
+        private String[] _id;
+        private String[] _name;
+
+        /**
+         * Private constructor - use open.
+         */
+        private Reader(FileChannel channel, EnumSet<Column> columns)
+        {
+            _channel = channel;
+            _inflater = new Inflater();
+            _columns = columns;
+            _position = HEADER_SIZE;
+            _bytesRead = HEADER_SIZE;
+        }
+
+        /**
+         * Opens a snapshot file
+         * @param path the file
+         * @param columns the columns to read (the others are skipped)
+         * @return the reader (call next to read the first row group)
+         * @throws IOException if the file can't be opened or is not a snapshot file
+         */
+        public static Reader open(Path path, Set<Column> columns) throws IOException{
+            FileChannel channel = FileChannel.open(path,StandardOpenOption.READ);
+            try{
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                readFully(channel,header,0);
+                if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION){
+                    throw new IOException("Not a snapshot file: "+path);
+                }
+                return new Reader(channel,columns.isEmpty() ? EnumSet.noneOf(Column.class) : EnumSet.copyOf(columns));
+            }
+            catch(IOException | RuntimeException e){
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Reads the next row group
+         * @return true if a row group was read, false at the end of the file
+         * @throws IOException if the file can't be read or is damaged
+         */
+        public boolean next() throws IOException{
+            if(_position >= _channel.size()){
+                return false;
+            }
+            ByteBuffer header = ByteBuffer.allocate(GROUP_HEADER_SIZE);
+            readFully(_channel,header,_position);
+            _bytesRead += GROUP_HEADER_SIZE;
+            _rows = header.getInt(0);
+            if(_rows < 0 || _rows > ROW_GROUP_SIZE){
+                throw new IOException("Damaged snapshot: row group of "+_rows+" apartments");
+            }
+            long end = _position + GROUP_HEADER_SIZE;
+            for(int c = 0; c < COLUMNS; c++){ //check all the sizes before anything is allocated.
+                int compressedSize = header.getInt(4 + 4 * c);
+                int encodedSize = header.getInt(4 + 4 * (COLUMNS + c));
+                if(compressedSize < 0 || encodedSize < 0 || encodedSize > (long)compressedSize * MAX_INFLATE_RATIO){
+                    throw new IOException("Damaged snapshot: column "+Column.values()[c]+" of "+compressedSize
+                        +" bytes, "+encodedSize+" bytes encoded");
+                }
+                end += compressedSize;
+            }
+            if(end > _channel.size()){
+                throw new IOException("Damaged snapshot: row group ends after the end of the file");
+            }
+            long offset = _position + GROUP_HEADER_SIZE;
+            for(Column column : Column.values()){
+                int compressedSize = header.getInt(4 + 4 * column.ordinal());
+                int encodedSize = header.getInt(4 + 4 * (COLUMNS + column.ordinal()));
+                if(_columns.contains(column)){ //read and decode, the others are skipped.
+                    if(_compressed.length < compressedSize){
+                        _compressed = new byte[compressedSize];
+                    }
+                    readFully(_channel,ByteBuffer.wrap(_compressed,0,compressedSize),offset);
+                    _bytesRead += compressedSize;
+                    inflate(compressedSize,encodedSize);
+                    Cursor cursor = new Cursor(_encoded,encodedSize);
+                    try{
+                        decode(column,cursor);
+                    }
+                    catch(RuntimeException e){ //a varint, size or index that the encoding can't have.
+                        throw new IOException("Damaged snapshot: column "+column+": "+e.getMessage(),e);
+                    }
+                    if(cursor._position != encodedSize){
+                        throw new IOException("Damaged snapshot: column "+column+" has "+(encodedSize - cursor._position)
+                            +" bytes after its values");
+                    }
+                }
+                offset += compressedSize;
+            }
+            _position = offset;
+            return true;
+        }
+
+        /**
+         * Gets the number of apartments in the current row group
+         * @return the number of apartments
+         */
+        public int getRowCount(){
+            return _rows;
+        }
+
+        /**
+         * Gets the number of bytes read from the file so far (skipped columns are not read)
+         * @return the number of bytes read
+         */
+        public long getBytesRead(){
+            return _bytesRead;
+        }
+
+        /**
+         * Gets the number of rooms of the apartments of the current row group
+         * @return an array of at least getRowCount() values (reused by the next row group)
+         */
+        public int[] getNoOfRooms(){
+            check(Column.NO_OF_ROOMS);
+            return _rooms;
+        }
+
+        /**
+         * Gets the areas of the apartments of the current row group
+         * @return an array of at least getRowCount() values (reused by the next row group)
+         */
+        public double[] getArea(){
+            check(Column.AREA);
+            return _area;
+        }
+
+        /**
+         * Gets the prices of the apartments of the current row group
+         * @return an array of at least getRowCount() values (reused by the next row group)
+         */
+        public double[] getPrice(){
+            check(Column.PRICE);
+            return _price;
+        }
+
+        /**
+         * Gets the rental start day numbers (see Date.fromEpochDay) of the current row group
+         * @return an array of at least getRowCount() values (reused by the next row group)
+         */
+        public int[] getRentalStartDayNumbers(){
+            check(Column.RENTAL_START_DATE);
+            return _start;
+        }
+
+        /**
+         * Gets the rental end day numbers (see Date.fromEpochDay) of the current row group
+         * @return an array of at least getRowCount() values (reused by the next row group)
+         */
+        public int[] getRentalEndDayNumbers(){
+            check(Column.RENTAL_END_DATE);
+            return _end;
+        }
+
+        /**
+         * Gets the tenants' date of birth day numbers (see Date.fromEpochDay) of the current row group
+         * @return an array of at least getRowCount() values (reused by the next row group)
+         */
+        public int[] getTenantDateOfBirthDayNumbers(){
+            check(Column.TENANT_DATE_OF_BIRTH);
+            return _dateOfBirth;
+        }
+
+        /**
+         * Gets the tenants' ids of the current row group
+         * @return an array of at least getRowCount() values (reused by the next row group)
+         */
+        public String[] getTenantId(){
+            check(Column.TENANT_ID);
+            return _id;
+        }
+
+        /**
+         * Gets the tenants' names of the current row group (equal names are the same String)
+         * @return an array of at least getRowCount() values (reused by the next row group)
+         */
+        public String[] getTenantName(){
+            check(Column.TENANT_NAME);
+            return _name;
+        }
+
+        /**
+         * Closes the file
+         * @throws IOException if it can't be closed
+         */
+        public void close() throws IOException{
+            _inflater.end();
+            _channel.close();
+        }
+
+        /**
+         * Throws IllegalStateException if a column was not asked for
+         */
+        private void check(Column column){
+            if(!_columns.contains(column)){
+                throw new IllegalStateException("Column "+column+" was not read");
+            }
+        }
+
+        private void inflate(int compressedSize, int encodedSize) throws IOException{
+            if(_encoded.length < encodedSize){
+                _encoded = new byte[encodedSize];
+            }
+            _inflater.reset();
+            _inflater.setInput(_compressed,0,compressedSize);
+            try{
+                int size = 0;
+                while(size < encodedSize && !_inflater.finished()){
+                    int inflated = _inflater.inflate(_encoded,size,encodedSize - size);
+                    if(inflated == 0 && _inflater.needsInput()){
+                        break; //the column is cut short.
+                    }
+                    size += inflated;
+                }
+                if(size != encodedSize){
+                    throw new IOException("Damaged snapshot: column of "+size+" bytes, expected "+encodedSize);
+                }
+            }
+            catch(DataFormatException e){
+                throw new IOException("Damaged snapshot",e);
+            }
+        }
+
+        /**
+         * Decodes one column of the current row group
+         * @throws IOException if a value is out of the range of its field
+         */
+        private void decode(Column column, Cursor cursor) throws IOException{
+            switch(column){
+                case NO_OF_ROOMS:
+                    _rooms = ensure(_rooms);
+                    for(int i = 0; i < _rows; i++){
+                        _rooms[i] = cursor.getCount(Integer.MAX_VALUE); //a whole varint, not cut to an int.
+                    }
+                    break;
+                case AREA:
+                    _area = getNotNegative(ensure(_area),cursor,column);
+                    break;
+                case PRICE:
+                    _price = getNotNegative(ensure(_price),cursor,column);
+                    break;
+                case RENTAL_START_DATE:
+                    _start = getDeltas(ensure(_start),cursor,column);
+                    break;
+                case RENTAL_END_DATE:
+                    _end = getDeltas(ensure(_end),cursor,column);
+                    break;
+                case TENANT_ID:
+                    _id = ensure(_id);
+                    for(int i = 0; i < _rows; i++){
+                        _id[i] = cursor.getString();
+                    }
+                    break;
+                case TENANT_NAME:
+                    _name = ensure(_name);
+                    String[] dictionary = new String[cursor.getCount(_rows)];
+                    for(int d = 0; d < dictionary.length; d++){
+                        dictionary[d] = cursor.getString();
+                    }
+                    for(int i = 0; i < _rows; i++){
+                        _name[i] = dictionary[cursor.getCount(dictionary.length - 1)];
+                    }
+                    break;
+                default: //TENANT_DATE_OF_BIRTH.
+                    _dateOfBirth = getDeltas(ensure(_dateOfBirth),cursor,column);
+                    break;
+            }
+        }
+
+        private double[] getNotNegative(double[] values, Cursor cursor, Column column) throws IOException{
+            for(int i = 0; i < _rows; i++){
+                values[i] = cursor.getDouble();
+                if(!(values[i] >= 0)){ //also NaN.
+                    throw new IOException("Damaged snapshot: "+column+" of row "+i+" is "+values[i]);
+                }
+            }
+            return values;
+        }
+
+        private int[] getDeltas(int[] days, Cursor cursor, Column column) throws IOException{
+            long previous = 0; //long, so a damaged delta can't wrap around into the range.
+            for(int i = 0; i < _rows; i++){
+                long zigzag = cursor.getVarint();
+                previous += (zigzag >>> 1) ^ -(zigzag & 1);
+                if(previous < FIRST_DAY || previous > LAST_DAY){
+                    throw new IOException("Damaged snapshot: "+column+" of row "+i+" is day number "+previous
+                        +", not in the years 1000-9999");
+                }
+                days[i] = (int)previous;
+            }
+            return days;
+        }
+
+        private int[] ensure(int[] array){
+            return array == null || array.length < _rows ? new int[_rows] : array;
+        }
+
+        private double[] ensure(double[] array){
+            return array == null || array.length < _rows ? new double[_rows] : array;
+        }
+
+        private String[] ensure(String[] array){
+            return array == null || array.length < _rows ? new String[_rows] : array;
+        }
+    }
+
+    /**
+     * A growing byte array that values are encoded into.
+     */
+    private static class Bytes
+    {
+        private byte[] _data = new byte[1024];
+        private int _size;
+
+        private void clear(){
+            _size = 0;
+        }
+
+        private void ensure(int more){
+            if(_size + more > _data.length){
+                _data = Arrays.copyOf(_data,Math.max(_data.length * 2,_size + more));
+            }
+        }
+
+        private void putVarint(long value){ //7 bits per byte, the high bit set on all but the last.
+            ensure(10);
+            while((value & ~0x7FL) != 0){
+                _data[_size++] = (byte)((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            _data[_size++] = (byte)value;
+        }
+
+        private void putDouble(double value){
+            ensure(8);
+            long bits = Double.doubleToRawLongBits(value);
+            for(int b = 0; b < 8; b++){
+                _data[_size++] = (byte)(bits >>> (8 * b));
+            }
+        }
+
+        private void putString(String value){
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes,0,_data,_size,bytes.length);
+            _size += bytes.length;
+        }
+    }
+
+    /**
+     * Reads encoded values from a byte array.
+     */
+    private static class Cursor
+    {
+        private final byte[] _data;
+        private final int _limit;
+        private int _position;
+
+        private Cursor(byte[] data, int limit)
+        {
+            _data = data;
+            _limit = limit;
+        }
+
+        private long getVarint(){
+            long value = 0;
+            for(int shift = 0; ; shift += 7){
+                if(shift > 63){
+                    throw new IllegalStateException("Damaged snapshot: varint longer than 10 bytes");
+                }
+                byte b = next();
+                value |= (long)(b & 0x7F) << shift;
+                if(b >= 0){ //high bit clear - the last byte.
+                    return value;
+                }
+            }
+        }
+
+        /**
+         * Reads a varint that must be from 0 to max (a dictionary size or index)
+         */
+        private int getCount(int max){
+            long value = getVarint();
+            if(value < 0 || value > max){
+                throw new IllegalStateException("Damaged snapshot: "+value+" is not from 0 to "+max);
+            }
+            return (int)value;
+        }
+
+        private double getDouble(){
+            long bits = 0;
+            for(int b = 0; b < 8; b++){
+                bits |= (long)(next() & 0xFF) << (8 * b);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        private String getString(){
+            int length = getCount(_limit - _position); //a whole varint, not cut to an int.
+            String value = new String(_data,_position,length,StandardCharsets.UTF_8);
+            _position += length;
+            return value;
+        }
+
+        private byte next(){
+            if(_position >= _limit){
+                throw new IllegalStateException("Damaged snapshot: column ends too early");
+            }
+            return _data[_position++];
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException{
+        while(buf.hasRemaining()){
+            channel.write(buf);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException{
+        while(buf.hasRemaining()){
+            if(channel.read(buf,position + buf.position()) < 0){
+                throw new IOException("Damaged snapshot: the file ends too early");
+            }
+        }
+    }
+}
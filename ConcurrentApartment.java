@@ -0,0 +1,227 @@
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * A thread safe Apartment, for many reader threads and some writer threads.
+ *
+ * The state is an Apartment object that is never changed after it is published
+ * (a snapshot). Readers just read the current snapshot, so reads never block and
+ * always see one consistent state. A writer copies the snapshot, changes the copy
+ * and publishes it with compareAndSet, trying again if another writer was faster,
+ * so a multi-field change such as changeTenant (price, tenant, start and end dates)
+ * is seen all at once or not at all.
+ *
+ * ApartmentListeners are not supported, because every change makes a new snapshot.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public class ConcurrentApartment
+{
+    private final AtomicReference<Apartment> _state; // current snapshot (never changed after published)
+
+    /**
+     * Creates a thread safe apartment with the values of the given apartment
+     * @param a the apartment to copy
+     */
+    public ConcurrentApartment(Apartment a)
+    {
+        _state = new AtomicReference<Apartment>(new Apartment(a)); //copy for avoid aliasing.
+    }
+
+    /**
+     * Gets a copy of the current state
+     * @return a new Apartment with the current values
+     */
+    public Apartment snapshot(){
+        return new Apartment(_state.get());
+    }
+
+    /**
+     * Gets the number of rooms the apartment has
+     * @return    the number of rooms the apartment has
+     */
+    public int getNoOfRooms(){
+        return _state.get().getNoOfRooms();
+    }
+
+    /**
+     * Gets the area of the apartment
+     * @return    the area of the apartment
+     */
+    public double getArea(){
+        return _state.get().getArea();
+    }
+
+    /**
+     * Gets the price of the apartment
+     * @return    the price of the apartment
+     */
+    public double getPrice(){
+        return _state.get().getPrice();
+    }
+
+    /**
+     * Gets the tenant renting the apartment
+     * @return the tenant renting the apartment
+     */
+    public Person getTenant(){
+        return _state.get().getTenant();
+    }
+
+    /**
+     * Gets the rental start date
+     * @return  the rental start date
+     */
+    public Date getRentalStartDate(){
+        return _state.get().getRentalStartDate();
+    }
+
+    /**
+     * Gets the rental end date
+     * @return    the rental end date
+     */
+    public Date getRentalEndDate(){
+        return _state.get().getRentalEndDate();
+    }
+
+    /**
+     * Sets the apartment's number of rooms (only if the new value is positive)
+     * @param num new number of rooms
+     */
+    public void setNoOfRooms(int num){
+        update(a -> { int old = a.getNoOfRooms(); a.setNoOfRooms(num); return a.getNoOfRooms() != old; });
+    }
+
+    /**
+     * Sets the apartment's area (only if the new value is positive)
+     * @param area apartment's new area
+     */
+    public void setArea(double area){
+        update(a -> { double old = a.getArea(); a.setArea(area); return a.getArea() != old; });
+    }
+
+    /**
+     * Sets the apartment's price (only if the new value is positive)
+     * @param  price apartment's new price
+     */
+    public void setPrice(double price){
+        update(a -> { double old = a.getPrice(); a.setPrice(price); return a.getPrice() != old; });
+    }
+
+    /**
+     * Sets the apartment's tenant
+     * @param  p apartment's new tenant
+     */
+    public void setTenant(Person p){
+        Person tenant = new Person(p); //copy once, outside the retry loop.
+        update(a -> { Person old = a.getTenantNoCopy(); a.setTenant(tenant);
+            return !a.getTenantNoCopy().equals(old); });
+    }
+
+    /**
+     * Sets the apartment's rental start date
+     * (only if the new rental start date is before the current rental end date)
+     * @param  d apartment's new rental start date
+     */
+    public void setRentalStartDate(Date d){
+        Date start = new Date(d);
+        update(a -> { int old = a.getRentalStartDayNumber(); a.setRentalStartDate(start);
+            return a.getRentalStartDayNumber() != old; });
+    }
+
+    /**
+     *  Sets the apartment's rental end date
+     *  (only if the new rental end date is after the current rental start date)
+     * @param  d apartment's new rental end date
+     */
+    public void setRentalEndDate(Date d){
+        Date end = new Date(d);
+        update(a -> { int old = a.getRentalEndDayNumber(); a.setRentalEndDate(end);
+            return a.getRentalEndDayNumber() != old; });
+    }
+
+    /**
+     * Extends the rental period by additional years (only if the years value is positive)
+     * @param  years  the number of years to extend the lease
+     */
+    public void extendRentalPeriod(int years){
+        update(a -> { int old = a.getRentalEndDayNumber(); a.extendRentalPeriod(years);
+            return a.getRentalEndDayNumber() != old; });
+    }
+
+    /**
+     * Computes the number of days left between a given date and the end of rental date.
+     * If the given date comes after the end of rental date, returns -1.
+     * @param  d a date object
+     * @return the number of days left between a given date and the end of rental date
+     */
+    public int daysLeft(Date d){
+        return _state.get().daysLeft(d);
+    }
+
+    /**
+     *  Checks if the apartment's tenant can be replaced, without changing anything
+     *  @param  startDate a new rental start date
+     *  @param  p a new tenant
+     *  @param price a new price
+     *  @return   ELIGIBLE if changeTenant would change the tenant, otherwise the rule that rejects it
+     */
+    public TenantChangeStatus checkTenantChange(Date startDate, Person p, double price){
+        return _state.get().checkTenantChange(startDate,p,price);
+    }
+
+    /**
+     *  Changes the tenant (same rules as Apartment.changeTenant). The new price, tenant
+     *  and rental dates become visible to readers together.
+     *  @param  startDate a new rental start date
+     *  @param  p a new tenant
+     *  @param price a new price
+     *  @return   true if the tenant has been changed
+     */
+    public boolean changeTenant(Date startDate, Person p, double price){
+        Date start = new Date(startDate);
+        Person tenant = new Person(p);
+        return update(a -> a.changeTenant(start,tenant,price));
+    }
+
+    /**
+     * Returns a String that represents this Apartment
+     * @return   a String that represents this Apartment
+     */
+    public String toString(){
+        return _state.get().toString();
+    }
+
+    /**
+     * Checks if the current state of this apartment equals an apartment (Apartment.equals).
+     * Not equals, because a ConcurrentApartment changes and is not an Apartment.
+     * @param other an apartment object
+     * @return true if the current state is equal to other
+     */
+    public boolean stateEquals(Apartment other){
+        return _state.get().equals(other);
+    }
+
+    /**
+     * Applies a change to a copy of the current snapshot and publishes it,
+     * trying again if another writer published first. A change that leaves the copy
+     * as it was (a rejected or same value) publishes nothing, so a new snapshot
+     * always means a new state.
+     * @param change changes the copy, returns false if nothing changed
+     * @return true if a new snapshot was published
+     */
+    private boolean update(Predicate<Apartment> change){
+        while(true){
+            Apartment current = _state.get();
+            Apartment next = new Apartment(current);
+            if(!change.test(next)){ //rejected, nothing to publish.
+                return false;
+            }
+            if(_state.compareAndSet(current,next)){
+                return true;
+            }
+            //another writer changed the state, try again with the new one.
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The built-in ApartmentMetrics - counts rejections and default values with LongAdders
+ * and keeps a LatencyHistogram for every timed operation.
+ *
+ * LongAdder spreads updates from different threads over separate cells, so counting
+ * doesn't make the threads wait for each other.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public class CounterMetrics implements ApartmentMetrics
+{
+    private final LongAdder[] _rejections; // by TenantChangeStatus ordinal
+    private final LongAdder[] _defaults; // by Fallback ordinal
+    private final LatencyHistogram[] _latencies; // by Operation ordinal
+
+    /**
+     * Creates metrics with all the counts at 0
+     */
+    public CounterMetrics()
+    {
+        _rejections = new LongAdder[TenantChangeStatus.values().length];
+        for(int i = 0; i < _rejections.length; i++){
+            _rejections[i] = new LongAdder();
+        }
+        _defaults = new LongAdder[Fallback.values().length];
+        for(int i = 0; i < _defaults.length; i++){
+            _defaults[i] = new LongAdder();
+        }
+        _latencies = new LatencyHistogram[Operation.values().length];
+        for(int i = 0; i < _latencies.length; i++){
+            _latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    public void tenantChangeRejected(TenantChangeStatus status){
+        _rejections[status.ordinal()].increment();
+    }
+
+    public void defaultUsed(Fallback fallback){
+        _defaults[fallback.ordinal()].increment();
+    }
+
+    public void recordLatency(Operation operation, long nanos){
+        _latencies[operation.ordinal()].record(nanos);
+    }
+
+    /**
+     * Gets the number of changes changeTenant rejected because of a rule
+     * @param status the rule
+     * @return the number of rejections
+     */
+    public long getRejections(TenantChangeStatus status){
+        return _rejections[status.ordinal()].sum();
+    }
+
+    /**
+     * Gets the number of times a default value was used
+     * @param fallback the default value
+     * @return the number of times it was used
+     */
+    public long getDefaults(Fallback fallback){
+        return _defaults[fallback.ordinal()].sum();
+    }
+
+    /**
+     * Gets the latencies recorded for an operation
+     * @param operation the operation
+     * @return its histogram (live - it keeps recording)
+     */
+    public LatencyHistogram getLatency(Operation operation){
+        return _latencies[operation.ordinal()];
+    }
+
+    /**
+     * Sets all the counts back to 0 and empties the histograms
+     */
+    public void reset(){
+        for(int i = 0; i < _rejections.length; i++){
+            _rejections[i].reset();
+        }
+        for(int i = 0; i < _defaults.length; i++){
+            _defaults[i].reset();
+        }
+        for(int i = 0; i < _latencies.length; i++){
+            _latencies[i].reset();
+        }
+    }
+}
@@ -7,19 +7,32 @@
  * @author Or saban
  * @version 19/10/2023 
  */
-public class Date
+public class Date implements Comparable<Date>
 {
     private int _day; // Represents day between 1-31
     private int _month; // Represents month 1-12
     private int _year; // Represents year with 4 digits
+    private int _dayNumber; // Day number of this date (calculateDate), kept in sync with day/month/year
     private static final int LAST_FEB_LEAP = 29; // Last day of February in leap year
     private static final int LAST_FEB_NOT_LEAP = 28; // Last day of February not in leap year
     private static final int LAST_DAY_NORMAL = 30; // Last day of normal month
     private static final int LAST_DAY_NORMAL_BIG = 31; // Last day of normal month
     private static final int FEB_MONTH = 2; // February month
     private static final int LAST_MONTH = 12; // Last month of the year
+    private static final int AUGUST_31 = 831; // month*100 + day of 31/08 - counted by the day numbers, but not a valid Date
     private static final int INVALID_MIN_YEAR = 1000; // Year must contain 4 digits
     private static final int INVALID_MAX_YEAR = 9999; // Year must contain 4 digits
+    private static final int YEARS = INVALID_MAX_YEAR - INVALID_MIN_YEAR + 1; // Number of valid years
+    private static final int DAYS_IN_LEAP_YEAR = 366;
+    // Lookup tables for the valid years (built once, see buildTables):
+    private static final boolean[] LEAP_YEAR = new boolean[YEARS]; // Leap bit of every valid year
+    private static final int[] YEAR_START = new int[YEARS + 1]; // Day number of 1 January of every valid year (and of 10000)
+    private static final int[][] LAST_DAY = new int[2][LAST_MONTH + 1]; // Last valid day of each month [not leap / leap][month]
+    private static final int[][] MONTH_START = new int[2][LAST_MONTH + 1]; // Days from 1 January to the 1st of each month
+    private static final byte[][] MONTH_OF_DAY = new byte[2][DAYS_IN_LEAP_YEAR]; // Month of each day of the year (0 = 1 January)
+    static {
+        buildTables(); //must run before DEFAULT_DATE is created.
+    }
     private static final Date DEFAULT_DATE = new Date(1, 1, 2000);
 
     /**
@@ -39,10 +52,12 @@ public class Date
         }
         else //otherwise invalid date return deffault date 01/01/2000.
         {
+            Metrics.defaultUsed(ApartmentMetrics.Fallback.DATE);
             _day = DEFAULT_DATE._day;
             _month = DEFAULT_DATE._month;
             _year = DEFAULT_DATE._year;
         }
+        _dayNumber = calculateDate(_day,_month,_year); //compute once, comparisons reuse it.
     }
 
     /**
@@ -53,24 +68,33 @@ public class Date
         _day = other._day; 
         _month = other._month;
         _year = other._year;
+        _dayNumber = other._dayNumber;
         // will contain the value of the other Date object.
     }
 
     /**
-     * Private method that checks if the date is valid.
+     * Checks if the date is valid (shared with ImmutableDate).
      *
      * @param day   The day in the month
      * @param month The month in the year
      * @param year  The year
      * @return True if the date is valid; otherwise, false
      */
-    private boolean validDateValue(int day , int month , int year){
+    static boolean validDateValue(int day , int month , int year){
         if(year <INVALID_MIN_YEAR || year > INVALID_MAX_YEAR){ // years must contain 4 digits.
             return false;
         }
         if(month < 1 || month > LAST_MONTH){ //if month is invalid.
             return false;
         }
+        return day >= 1 && day <= LAST_DAY[leapIndex(year)][month]; //check if valid or invalid day
+    }
+
+    /**
+     * Private method that gives the last day of a month (28/29/30/31),
+     * used once to build the LAST_DAY table.
+     */
+    private static int lastDayOfMonth(int month, boolean leapYear){
         switch(month){ //switch between days in months (28/29/30/31).
             case 1: //January.
             case 3: // March.
@@ -78,25 +102,21 @@ public class Date
             case 7: //July.
             case 10: //October.
             case LAST_MONTH: //December.
-                return (day >=1 && day<= LAST_DAY_NORMAL_BIG);  //check if valid or invalid day
+                return LAST_DAY_NORMAL_BIG;
             case 4: // April.
             case 6: //June
             case 8: //August.
             case 9: //September.
             case 11: //November.
-                return (day >=1 && day<= LAST_DAY_NORMAL);  //check if valid or invalid day                   
-
+                return LAST_DAY_NORMAL;
             case FEB_MONTH: //February.
-                if(isLeapYear(year)) //check if leap year
+                if(leapYear) //check if leap year
                 {
-                    return (day >=1 && day<= LAST_FEB_LEAP); //check if valid or invalid day                    
-                }
-                else //otherwise not leap year.
-                {
-                    return (day >=1 && day<= LAST_FEB_NOT_LEAP); //check if valid or invalid day   
+                    return LAST_FEB_LEAP;
                 }
+                return LAST_FEB_NOT_LEAP; //otherwise not leap year.
         }
-        return false; 
+        return 0;
     }
 
     /**
@@ -123,6 +143,16 @@ public class Date
         return _year;
     }
 
+    /**
+     *  Gets the epoch day of this date - its day number since the beginning of the
+     *  Christian counting of years (see calculateDate). The difference between the
+     *  epoch days of two dates is the number of days between them.
+     *  @return the epoch day of this date.
+     */
+    public int toEpochDay(){
+        return _dayNumber;
+    }
+
     /**
      *  Sets the day (only if date remains valid)
      *  @param dayToSet  the new day value
@@ -130,6 +160,7 @@ public class Date
     public void setDay(int dayToSet){
         if(validDateValue(dayToSet,_month,_year)){ // if valid change otherwise nothing.
             _day = dayToSet;
+            _dayNumber = calculateDate(_day,_month,_year);
         }
 
     }
@@ -141,6 +172,7 @@ public class Date
     public void setMonth(int monthToSet){
         if(validDateValue(_day,monthToSet,_year)){
             _month =monthToSet;
+            _dayNumber = calculateDate(_day,_month,_year);
         }
     }
 
@@ -151,6 +183,7 @@ public class Date
     public void setYear(int yearToSet){
         if(validDateValue(_day,_month,yearToSet)){
             _year = yearToSet;
+            _dayNumber = calculateDate(_day,_month,_year);
         }
     }
 
@@ -160,19 +193,51 @@ public class Date
      * @return true if the dates are the same
      */
     public boolean equals (Date other){
-        if(calculateDate(_day,_month,_year) == calculateDate(other._day,other._month,other._year)){
+        if(_dayNumber == other._dayNumber){
             return true; //if the counting days equals they are equals date.
         }
         return false;
     }
 
+    /**
+     * Checks if this date equals another object (same as equals(Date) for dates)
+     * @param obj  the object to compare this date to
+     * @return true if obj is a Date with the same value
+     */
+    public boolean equals (Object obj){
+        if(!(obj instanceof Date)){ //also false for null.
+            return false;
+        }
+        return equals((Date)obj);
+    }
+
+    /**
+     * Returns a hash code for this date - its epoch day.
+     * Changing the date (setDay/setMonth/setYear) changes the hash code, so a Date
+     * must not be changed while it is a key in a hashed collection.
+     * @return the hash code of this date
+     */
+    public int hashCode(){
+        return _dayNumber;
+    }
+
+    /**
+     * Compares this date with another date by time order
+     * @param other  the date to compare this date to
+     * @return a negative number if this date is before other, 0 if they are
+     * the same date, a positive number if this date is after other
+     */
+    public int compareTo (Date other){
+        return Integer.compare(_dayNumber,other._dayNumber);
+    }
+
     /**
      * Checks if this date comes before another date
      * @param other  date to compare this date to
      * @return true if this date is before the other date
      */
     public boolean before (Date other){
-        if(calculateDate(_day,_month,_year) < calculateDate(other._day,other._month,other._year)){
+        if(_dayNumber < other._dayNumber){
             return true;
             //if the days is smaller meaning this date come before other date.
         }
@@ -195,7 +260,7 @@ public class Date
     the number of days between the dates (non negative value)       
      */
     public int difference (Date other){
-        return Math.abs(calculateDate(_day,_month,_year) - calculateDate(other._day,other._month,other._year));
+        return Math.abs(_dayNumber - other._dayNumber);
         //absulute value of the difference of the days from starting count and the other one.
     }
 
@@ -207,23 +272,33 @@ public class Date
      * / month(2 digits) / year (4 digits) for example: 02/03/1998
      */
     public String toString(){
-        String temp =""; //building the date string.
-        if(_day < 10){ //if miss 0 add.
-            temp +="0"+_day+"/";    
-        }
-        else //not miss 0.
-        {
-            temp +=_day+"/";
+        return appendTo(new StringBuilder(10)).toString(); //dd/MM/yyyy is 10 characters.
+    }
+
+    /**
+     * Appends this date to a StringBuilder, in the same format as toString
+     * (day (2 digits) / month (2 digits) / year (4 digits)), without creating Strings.
+     * @param sb  the StringBuilder to append to
+     * @return sb, for chaining
+     */
+    public StringBuilder appendTo(StringBuilder sb){
+        return appendDate(sb,_day,_month,_year);
+    }
+
+    /**
+     * Appends a date in the format dd/MM/yyyy (shared with ImmutableDate).
+     */
+    static StringBuilder appendDate(StringBuilder sb, int day, int month, int year){
+        if(day < 10){ //if miss 0 add.
+            sb.append('0');
         }
-        if(_month < 10){ //if miss 0 add.
-            temp +="0"+_month+"/";    
+        sb.append(day).append('/');
+        if(month < 10){ //if miss 0 add.
+            sb.append('0');
         }
-        else //not miss 0.
-        {
-            temp+=_month+"/";
-        }
-        temp += _year; // add the year.
-        return temp;
+        sb.append(month).append('/');
+        sb.append(year); // add the year.
+        return sb;
     }
 
     /**
@@ -248,11 +323,84 @@ public class Date
         return new Date(_day,_month,_year+num);
     }
 
+    /**
+     * Adds years to a day number with the same rules as addYearsToDate (29/02 and 28/02
+     * move between leap and not leap years), without creating a Date.
+     * If the result is not a valid Date, returns the day number of 01/01/2000 like the constructor.
+     */
+    static int addYearsToDayNumber(int dayNumber, int num)
+    {
+        int packed = dateOfDayNumber(dayNumber);
+        int day = packed%100;
+        int month = (packed/100)%100;
+        int year = packed/10000;
+        if(!isLeapYear(year) && day == LAST_FEB_NOT_LEAP && month == FEB_MONTH && isLeapYear(year+num)){
+            day++; //28/02 to 29/02, as addYearsToDate.
+        }
+        else if(isLeapYear(year) && day == LAST_FEB_LEAP && month == FEB_MONTH && !isLeapYear(year+num)){
+            day--; //29/02 to 28/02.
+        }
+        if(!validDateValue(day,month,year+num)){ //invalid date get deffault date.
+            return DEFAULT_DATE._dayNumber;
+        }
+        return calculateDate(day,month,year+num);
+    }
+
+    /**
+     * Returns the date that is a number of days after this date (before it if days is negative).
+     * Computed on epoch days, so it takes the same time for any number of days.
+     * The epoch days count 31/08, which this class does not accept, so a result on 31/08
+     * moves on to 01/09 (or back to 30/08 if days is negative).
+     * If the result is not a valid Date, returns 01/01/2000 (see fromEpochDay).
+     * @param days  number of days to add
+     * @return a new Date, days days after this date
+     */
+    public Date plusDays(int days){
+        int dayNumber = _dayNumber + days;
+        int packed = dateOfDayNumber(dayNumber);
+        if(packed%10000 == AUGUST_31){ //skip 31/08 in the direction of the move.
+            packed = dateOfDayNumber(days < 0 ? dayNumber - 1 : dayNumber + 1);
+        }
+        return new Date(packed%100,(packed/100)%100,packed/10000);
+    }
+
+    /**
+     * Returns the date that is a number of months after this date (before it if months is negative).
+     * If the day does not exist in the new month it is moved to the month's last day
+     * (for example 31/01 plus 1 month is 28/02, or 29/02 in a leap year), like
+     * addYearsToDate moves 29/02 to 28/02. If the new year is not 4 digits returns 01/01/2000.
+     * @param months  number of months to add
+     * @return a new Date, months months after this date
+     */
+    public Date plusMonths(int months){
+        long monthIndex = (long)_year*LAST_MONTH + (_month - 1) + months; //months since year 0.
+        long year = Math.floorDiv(monthIndex,(long)LAST_MONTH);
+        int month = (int)Math.floorMod(monthIndex,(long)LAST_MONTH) + 1;
+        if(year < INVALID_MIN_YEAR || year > INVALID_MAX_YEAR){ //invalid date get deffault date.
+            return new Date(DEFAULT_DATE);
+        }
+        int lastDay = LAST_DAY[leapIndex((int)year)][month];
+        return new Date(Math.min(_day,lastDay),month,(int)year); //end of month clamping.
+    }
+
+    /**
+     * Computes the day number since the beginning of the Christian counting of years
+     * (same numbers as countDays, from the lookup tables for the valid years).
+     */
+    static int calculateDate ( int day, int month, int year)
+    {
+        if(year >= INVALID_MIN_YEAR && year <= INVALID_MAX_YEAR && month >= 1 && month <= LAST_MONTH){
+            return YEAR_START[year - INVALID_MIN_YEAR] + MONTH_START[leapIndex(year)][month] + day - 1;
+        }
+        return countDays(day,month,year); //outside the tables.
+    }
+
     /**
      * private method that given to help the students.
      * computes the day number since the beginning of the Christian counting of years
+     * (the tables are built from it, and Checks compares them with it)
      */
-    private int calculateDate ( int day, int month, int year)
+    static int countDays ( int day, int month, int year)
     {
         if (month < 3) {
             year--;
@@ -261,12 +409,118 @@ public class Date
         return 365 * year + year/4 - year/100 + year/400 + ((month+1) * 306)/10 + (day - 62);
     } 
 
+    /**
+     * Inverse of calculateDate - finds the date of a day number.
+     * Returns the date packed as year*10000 + month*100 + day (for example 19980302),
+     * so callers can build the object they need without an extra allocation.
+     */
+    static int dateOfDayNumber(int dayNumber)
+    {
+        if(dayNumber >= YEAR_START[0] && dayNumber < YEAR_START[YEARS]){ //a valid year - use the tables.
+            int index = (int)((long)(dayNumber - YEAR_START[0]) * 400 / 146097); //400 years are 146097 days.
+            if(index >= YEARS){
+                index = YEARS - 1;
+            }
+            while(YEAR_START[index + 1] <= dayNumber){ //fix the estimate.
+                index++;
+            }
+            while(YEAR_START[index] > dayNumber){
+                index--;
+            }
+            int leap = LEAP_YEAR[index] ? 1 : 0;
+            int dayOfYear = dayNumber - YEAR_START[index];
+            int month = MONTH_OF_DAY[leap][dayOfYear];
+            int day = dayOfYear - MONTH_START[leap][month] + 1;
+            return (INVALID_MIN_YEAR + index)*10000 + month*100 + day;
+        }
+        int year = (int)(dayNumber / 365.2425); //years counted from March (like countDays).
+        while(countDays(1,3,year+1) <= dayNumber){ //fix the estimate.
+            year++;
+        }
+        while(countDays(1,3,year) > dayNumber){
+            year--;
+        }
+        int dayOfYear = dayNumber - countDays(1,3,year); //days since 1 March.
+        int month = (5*dayOfYear + 2)/153; //0 = March ... 11 = February.
+        int day = dayOfYear - (153*month + 2)/5 + 1;
+        month += 3;
+        if(month > LAST_MONTH){ //January and February belong to the next year.
+            month -= LAST_MONTH;
+            year++;
+        }
+        return year*10000 + month*100 + day;
+    }
+
+    /**
+     * Creates the date of an epoch day (see toEpochDay).
+     * The epoch day of 31/08, which this class does not accept, gives the next valid
+     * date 01/09, so fromEpochDay(d.toEpochDay() + 1) is always the date after d.
+     * If the year is not 4 digits, returns the date 01/01/2000 like the constructor.
+     * @param epochDay  the epoch day of the date
+     * @return a new Date with that epoch day (01/09 for the epoch day of 31/08)
+     */
+    public static Date fromEpochDay(int epochDay)
+    {
+        int packed = dateOfDayNumber(epochDay);
+        if(packed%10000 == AUGUST_31){ //31/08 is not valid - the next valid date.
+            packed = dateOfDayNumber(epochDay + 1);
+        }
+        return new Date(packed%100,(packed/100)%100,packed/10000);
+    }
+
+    /**
+     * Checks if the year is a leap year (from the table for the valid years)
+     */
+    static boolean isLeapYear (int y)
+    {
+        if(y >= INVALID_MIN_YEAR && y <= INVALID_MAX_YEAR){
+            return LEAP_YEAR[y - INVALID_MIN_YEAR];
+        }
+        return computeLeapYear(y);
+    }
+
     /**
      * private method that given to help the students.
      * checks if the year is a leap year
+     * (the tables are built from it, and Checks compares them with it)
      */
-    private boolean isLeapYear (int y)
+    static boolean computeLeapYear (int y)
     {
         return (y%4==0 && y%100!=0) || (y%400==0) ? true : false;
-    } 
+    }
+
+    /**
+     * Gets the row of the month tables for a valid year (1 for leap years, 0 otherwise)
+     */
+    private static int leapIndex(int year)
+    {
+        return LEAP_YEAR[year - INVALID_MIN_YEAR] ? 1 : 0;
+    }
+
+    /**
+     * Builds the lookup tables for the valid years (1000-9999) - leap bits, day number of
+     * every 1 January, last day and first day of every month, and the month of every day of the year.
+     */
+    private static void buildTables()
+    {
+        for(int i = 0; i < YEARS; i++){
+            LEAP_YEAR[i] = computeLeapYear(INVALID_MIN_YEAR + i);
+            YEAR_START[i] = countDays(1,1,INVALID_MIN_YEAR + i);
+        }
+        YEAR_START[YEARS] = countDays(1,1,INVALID_MAX_YEAR + 1); //end of the last year.
+        for(int leap = 0; leap < 2; leap++){
+            int year = leap == 1 ? 2000 : 2001; //any leap / not leap year.
+            for(int month = 1; month <= LAST_MONTH; month++){
+                LAST_DAY[leap][month] = lastDayOfMonth(month,leap == 1);
+                MONTH_START[leap][month] = countDays(1,month,year) - countDays(1,1,year);
+            }
+            int month = 1;
+            for(int dayOfYear = 0; dayOfYear < DAYS_IN_LEAP_YEAR; dayOfYear++){
+                while(month < LAST_MONTH && MONTH_START[leap][month + 1] <= dayOfYear){
+                    month++;
+                }
+                MONTH_OF_DAY[leap][dayOfYear] = (byte)month;
+            }
+        }
+    }
 }
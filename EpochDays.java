@@ -0,0 +1,148 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Bulk date comparisons over arrays of day numbers (Date.toEpochDay), for checks over a
+ * whole portfolio at once instead of calling Date.before or daysLeft object by object.
+ *
+ * The loops are simple and have no branches, so the JIT compiles them to SIMD
+ * instructions where the CPU has them (the Vector API would need an incubator module).
+ * Results are bitmasks (bit i of word i/64 is the result for index i) or int arrays.
+ * For a bitmask the days are first compared into a block of 0/1 bytes (a vectorized
+ * loop), and the bytes are then packed into bits 8 at a time.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public final class EpochDays
+{
+    private static final int WORD_BITS = 64;
+    private static final int BLOCK = 4096; // days compared before their flags are packed (multiple of 64)
+    private static final long PACK = 0x0102040810204080L; // moves bit 0 of byte j to bit 56+j
+    private static final VarHandle BYTES_AS_LONG = MethodHandles.byteArrayViewVarHandle(long[].class,
+        ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * No instances - all the methods are static.
+     */
+    private EpochDays()
+    {
+    }
+
+    /**
+     * Creates a bitmask with room for a number of bits
+     * @param length the number of bits
+     * @return a new array of ceil(length/64) words
+     */
+    public static long[] newMask(int length){
+        return new long[(length + WORD_BITS - 1) / WORD_BITS];
+    }
+
+    /**
+     * Finds the days before a given day (same as Date.before)
+     * @param days the day numbers
+     * @param length the number of days to check (from index 0)
+     * @param day the day to compare with
+     * @param mask receives the result - bit i is set if days[i] is before day
+     * (at least newMask(length) words, the bits after length are cleared)
+     */
+    public static void before(int[] days, int length, int day, long[] mask){
+        byte[] flags = new byte[BLOCK];
+        for(int start = 0; start < length; start += BLOCK){
+            int count = Math.min(BLOCK,length - start);
+            for(int i = 0; i < count; i++){
+                flags[i] = (byte)((days[start + i] - day) >>> 31); //the sign bit is 1 if before.
+            }
+            pack(flags,count,mask,start / WORD_BITS);
+        }
+    }
+
+    /**
+     * Finds the days after a given day (same as Date.after)
+     * @param days the day numbers
+     * @param length the number of days to check (from index 0)
+     * @param day the day to compare with
+     * @param mask receives the result - bit i is set if days[i] is after day
+     * (at least newMask(length) words, the bits after length are cleared)
+     */
+    public static void after(int[] days, int length, int day, long[] mask){
+        byte[] flags = new byte[BLOCK];
+        for(int start = 0; start < length; start += BLOCK){
+            int count = Math.min(BLOCK,length - start);
+            for(int i = 0; i < count; i++){
+                flags[i] = (byte)((day - days[start + i]) >>> 31);
+            }
+            pack(flags,count,mask,start / WORD_BITS);
+        }
+    }
+
+    /**
+     * Computes the number of days between every day and a given day (same as Date.difference)
+     * @param days the day numbers
+     * @param length the number of days (from index 0)
+     * @param day the day to compare with
+     * @param result receives the differences (result[i] is the difference of days[i])
+     */
+    public static void difference(int[] days, int length, int day, int[] result){
+        for(int i = 0; i < length; i++){
+            result[i] = Math.abs(days[i] - day);
+        }
+    }
+
+    /**
+     * Computes the days left from a given day to every end day (same as Apartment.daysLeft)
+     * @param endDays the day numbers of the rental end dates
+     * @param length the number of days (from index 0)
+     * @param day the day to count from
+     * @param result receives the days left (-1 if the end day is before day)
+     */
+    public static void daysLeft(int[] endDays, int length, int day, int[] result){
+        for(int i = 0; i < length; i++){
+            int left = endDays[i] - day;
+            result[i] = left | (left >> 31); //-1 if negative (all bits set), otherwise left.
+        }
+    }
+
+    /**
+     * Packs 0/1 flags into the words of a bitmask, 8 flags at a time: the 8 flag bytes are
+     * read as one long and a multiply moves the low bit of every byte into the top byte
+     */
+    private static void pack(byte[] flags, int count, long[] mask, int firstWord){
+        int words = (count + WORD_BITS - 1) / WORD_BITS;
+        for(int i = count; i < words * WORD_BITS; i++){ //clear the flags after the last day.
+            flags[i] = 0;
+        }
+        for(int w = 0; w < words; w++){
+            long bits = 0;
+            for(int k = 0; k < 8; k++){
+                long eight = (long)BYTES_AS_LONG.get(flags,w * WORD_BITS + k * 8);
+                bits |= ((eight * PACK) >>> 56) << (k * 8);
+            }
+            mask[firstWord + w] = bits;
+        }
+    }
+
+    /**
+     * Counts the set bits of a bitmask
+     * @param mask the bitmask
+     * @return the number of set bits
+     */
+    public static int count(long[] mask){
+        int count = 0;
+        for(int w = 0; w < mask.length; w++){
+            count += Long.bitCount(mask[w]);
+        }
+        return count;
+    }
+
+    /**
+     * Checks if bit i of a bitmask is set
+     * @param mask the bitmask
+     * @param i the index
+     * @return true if the bit is set
+     */
+    public static boolean isSet(long[] mask, int i){
+        return (mask[i / WORD_BITS] & (1L << i)) != 0; //shifts of a long use the low 6 bits.
+    }
+}
@@ -0,0 +1,194 @@
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Schedules apartments by the end date of their rental, so a daily job can find the
+ * leases that expire soon without going over the whole portfolio.
+ *
+ * The apartments are kept in a min-heap ordered by the day number of the rental end
+ * date. Polling the expiring apartments costs O(k log n) for k apartments found.
+ * When an apartment's end date changes (for example by extendRentalPeriod or
+ * changeTenant) it is scheduled again at its new end date; the old heap entry is
+ * left in the heap and skipped when it reaches the top.
+ *
+ * An apartment returned by a poll is not returned again until its end date changes.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public class ExpiryScheduler implements ApartmentListener
+{
+    private PriorityQueue<Entry> _queue; // entries ordered by end day number
+    private IdentityHashMap<Apartment, Entry> _entries; // scheduled apartments and their last entry (out of the heap if polled)
+    private long _nextSequence; // orders entries with the same end date by insertion
+
+    /**
+     * A heap entry - an apartment and the end date it was scheduled with.
+     */
+    private static class Entry implements Comparable<Entry>
+    {
+        private final Apartment _apartment;
+        private final int _end; // day number of the rental end date
+        private final long _sequence;
+
+        private Entry(Apartment apartment, int end, long sequence)
+        {
+            _apartment = apartment;
+            _end = end;
+            _sequence = sequence;
+        }
+
+        public int compareTo(Entry other){
+            if(_end != other._end){
+                return _end < other._end ? -1 : 1;
+            }
+            return Long.compare(_sequence,other._sequence);
+        }
+    }
+
+    /**
+     * Creates an empty scheduler
+     */
+    public ExpiryScheduler()
+    {
+        _queue = new PriorityQueue<Entry>();
+        _entries = new IdentityHashMap<Apartment, Entry>();
+    }
+
+    /**
+     * Adds an apartment to the scheduler (does nothing if it is already scheduled)
+     * @param a the apartment to add
+     */
+    public void add(Apartment a){
+        if(_entries.containsKey(a)){
+            return;
+        }
+        schedule(a);
+        a.addApartmentListener(this); //reschedule when the end date changes.
+    }
+
+    /**
+     * Removes an apartment from the scheduler
+     * @param a the apartment to remove
+     */
+    public void remove(Apartment a){
+        if(_entries.containsKey(a)){
+            _entries.remove(a); //its heap entry becomes stale and is skipped.
+            a.removeApartmentListener(this);
+        }
+    }
+
+    /**
+     * Gets the number of apartments in the scheduler (including polled ones)
+     * @return the number of apartments in the scheduler
+     */
+    public int size(){
+        return _entries.size();
+    }
+
+    /**
+     * Returns (without removing) the next apartments to expire
+     * @param k the maximum number of apartments to return
+     * @return up to k apartments that were not polled yet, ordered by rental end date
+     */
+    public List<Apartment> nextExpiring(int k){
+        List<Apartment> result = new ArrayList<Apartment>();
+        List<Entry> taken = new ArrayList<Entry>();
+        while(result.size() < k){
+            Entry entry = pollLive();
+            if(entry == null){ //no more apartments.
+                break;
+            }
+            taken.add(entry);
+            result.add(entry._apartment);
+        }
+        _queue.addAll(taken); //put them back, they were only looked at.
+        return result;
+    }
+
+    /**
+     * Removes and returns the apartments whose rental ends before a given date
+     * @param d a date
+     * @return the apartments (not polled yet) whose rental end date is before d,
+     * ordered by rental end date
+     */
+    public List<Apartment> pollExpiringBefore(Date d){
+        return pollUntil(d.toEpochDay() - 1);
+    }
+
+    /**
+     * Removes and returns the apartments with at most a given number of days left
+     * (daysLeft(today) is at most days, including leases that already ended)
+     * @param today the current date
+     * @param days the number of days (for example 90 for the changeTenant window)
+     * @return the apartments (not polled yet) that end within days days of today,
+     * ordered by rental end date
+     */
+    public List<Apartment> pollExpiringWithin(Date today, int days){
+        return pollUntil(today.toEpochDay() + days);
+    }
+
+    /**
+     * Called by a scheduled apartment after it changed - reschedules it if its end date changed
+     * @param apartment the apartment that changed
+     */
+    public void apartmentChanged(Apartment apartment){
+        if(!_entries.containsKey(apartment)){ //not scheduled by us.
+            return;
+        }
+        if(_entries.get(apartment)._end == apartment.getRentalEndDayNumber()){
+            return; //end date did not change (polled or not).
+        }
+        schedule(apartment);
+    }
+
+    /**
+     * Removes and returns all the live entries ending on or before the given day number
+     */
+    private List<Apartment> pollUntil(int lastDay){
+        List<Apartment> result = new ArrayList<Apartment>();
+        while(true){
+            Entry top = peekLive();
+            if(top == null || top._end > lastDay){
+                break;
+            }
+            _queue.poll(); //stays in _entries with its end date - polled until the end date changes.
+            result.add(top._apartment);
+        }
+        return result;
+    }
+
+    /**
+     * Removes and returns the first live entry (null if none), the apartment stays scheduled
+     */
+    private Entry pollLive(){
+        Entry top = peekLive();
+        if(top != null){
+            _queue.poll();
+        }
+        return top;
+    }
+
+    /**
+     * Drops stale entries from the top of the heap and returns the first live one (null if none)
+     */
+    private Entry peekLive(){
+        Entry top = _queue.peek();
+        while(top != null && _entries.get(top._apartment) != top){ //removed, polled or rescheduled.
+            _queue.poll();
+            top = _queue.peek();
+        }
+        return top;
+    }
+
+    /**
+     * Adds a heap entry for the apartment's current end date
+     */
+    private void schedule(Apartment a){
+        Entry entry = new Entry(a,a.getRentalEndDayNumber(),_nextSequence++);
+        _entries.put(a,entry);
+        _queue.add(entry);
+    }
+}
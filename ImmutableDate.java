@@ -0,0 +1,213 @@
+
+/**
+ * This class represents an immutable Date value.
+ * Follows the same rules as Date (years 1000-9999, invalid dates become 01/01/2000)
+ * but can never change after it is created, so instances can be shared freely
+ * instead of being copied to avoid aliasing.
+ *
+ * Instances are obtained with valueOf, which returns a canonical instance from a
+ * bounded cache keyed by the day number of the date.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public final class ImmutableDate implements Comparable<ImmutableDate>
+{
+    private final int _day; // Represents day between 1-31
+    private final int _month; // Represents month 1-12
+    private final int _year; // Represents year with 4 digits
+    private final int _dayNumber; // Day number of this date (Date.calculateDate)
+    private static final int LAST_FEB_LEAP = 29; // Last day of February in leap year
+    private static final int LAST_FEB_NOT_LEAP = 28; // Last day of February not in leap year
+    private static final int FEB_MONTH = 2; // February month
+    private static final int CACHE_SIZE = 4096; // Cached dates (power of 2, a bit more than 11 years of days)
+    private static final ImmutableDate[] CACHE = new ImmutableDate[CACHE_SIZE];
+    // Each slot holds the last date whose day number maps to it. Racy reads are fine:
+    // all fields are final, so a date seen through the array is always fully built.
+
+    /**
+     * Private constructor - use valueOf to get an instance.
+     */
+    private ImmutableDate(int day, int month, int year, int dayNumber)
+    {
+        _day = day;
+        _month = month;
+        _year = year;
+        _dayNumber = dayNumber;
+    }
+
+    /**
+     * Returns the date for the given values - if the given date is not valid
+     * returns the date 01/01/2000 (same as the Date constructor).
+     *
+     * @param day   The day in the month (1-31)
+     * @param month The month in the year (1-12)
+     * @param year  The year (4 digits)
+     * @return the canonical date for these values
+     */
+    public static ImmutableDate valueOf(int day, int month, int year)
+    {
+        if(!Date.validDateValue(day,month,year)){ //invalid date get deffault date 01/01/2000.
+            Metrics.defaultUsed(ApartmentMetrics.Fallback.DATE);
+            day = 1;
+            month = 1;
+            year = 2000;
+        }
+        int dayNumber = Date.calculateDate(day,month,year);
+        int slot = dayNumber & (CACHE_SIZE - 1);
+        ImmutableDate cached = CACHE[slot];
+        if(cached != null && cached._dayNumber == dayNumber){ //already have this date.
+            return cached;
+        }
+        cached = new ImmutableDate(day,month,year,dayNumber);
+        CACHE[slot] = cached; //replace the older date in this slot.
+        return cached;
+    }
+
+    /**
+     * Returns the immutable date with the same value as the given date
+     * @param d  the date to convert
+     * @return the canonical date with the value of d
+     */
+    public static ImmutableDate valueOf(Date d)
+    {
+        return valueOf(d.getDay(),d.getMonth(),d.getYear());
+    }
+
+    /**
+     *  Gets the day
+     *  @return the day of this date.
+     */
+    public int getDay(){
+        return _day;
+    }
+
+    /**
+     *  Gets the month
+     *  @return the month of this date.
+     */
+    public int getMonth(){
+        return _month;
+    }
+
+    /**
+     *  Gets the year
+     *  @return the year of this date.
+     */
+    public int getYear(){
+        return _year;
+    }
+
+    /**
+     *  Gets the epoch day of this date (see Date.toEpochDay)
+     *  @return the epoch day of this date.
+     */
+    public int toEpochDay(){
+        return _dayNumber;
+    }
+
+    /**
+     * Creates a new (mutable) Date with the value of this date
+     * @return a new Date object with the same value
+     */
+    public Date toDate(){
+        return new Date(_day,_month,_year);
+    }
+
+    /**
+     * Checks if this date comes before another date
+     * @param other  date to compare this date to
+     * @return true if this date is before the other date
+     */
+    public boolean before(ImmutableDate other){
+        return _dayNumber < other._dayNumber;
+    }
+
+    /**
+     * Checks if this date comes after another date
+     * @param other  date to compare this date to
+     * @return true if this date is after the other date
+     */
+    public boolean after(ImmutableDate other){
+        return _dayNumber > other._dayNumber;
+    }
+
+    /**
+     * Calculates the difference in days between two dates
+     * @param  other  the date to calculate the difference between
+     * @return the number of days between the dates (non negative value)
+     */
+    public int difference(ImmutableDate other){
+        return Math.abs(_dayNumber - other._dayNumber);
+    }
+
+    /**
+     * Returns the date that is num years after this date, with the same
+     * February handling as Date.addYearsToDate.
+     * @param num  number of years to add
+     * @return the date num years after this date
+     */
+    public ImmutableDate addYearsToDate(int num){
+        int day = _day;
+        if(_month == FEB_MONTH){
+            if(!Date.isLeapYear(_year) && _day == LAST_FEB_NOT_LEAP && Date.isLeapYear(_year+num)){
+                day++; //28.2 in regular year goes to 29.2 in leap year.
+            }
+            else if(Date.isLeapYear(_year) && _day == LAST_FEB_LEAP && !Date.isLeapYear(_year+num)){
+                day--; //29.2 in leap year goes to 28.2 in regular year.
+            }
+        }
+        return valueOf(day,_month,_year+num);
+    }
+
+    /**
+     * Checks if two dates are the same
+     * @param obj  the object to compare this date to
+     * @return true if obj is an ImmutableDate with the same value
+     */
+    public boolean equals(Object obj){
+        if(this == obj){
+            return true;
+        }
+        if(!(obj instanceof ImmutableDate)){
+            return false;
+        }
+        return _dayNumber == ((ImmutableDate)obj)._dayNumber;
+    }
+
+    /**
+     * Compares this date with another date by time order
+     * @param other  the date to compare this date to
+     * @return a negative number if this date is before other, 0 if they are
+     * the same date, a positive number if this date is after other
+     */
+    public int compareTo(ImmutableDate other){
+        return Integer.compare(_dayNumber,other._dayNumber);
+    }
+
+    /**
+     * Returns a hash code for this date (its day number)
+     * @return the hash code of this date
+     */
+    public int hashCode(){
+        return _dayNumber;
+    }
+
+    /**
+     * Returns a String that represents this date in the format dd/MM/yyyy
+     * (same as Date.toString), for example: 02/03/1998
+     * @return a String that represents this date
+     */
+    public String toString(){
+        return appendTo(new StringBuilder(10)).toString();
+    }
+
+    /**
+     * Appends this date to a StringBuilder in the format dd/MM/yyyy, without creating Strings
+     * @param sb  the StringBuilder to append to
+     * @return sb, for chaining
+     */
+    public StringBuilder appendTo(StringBuilder sb){
+        return Date.appendDate(sb,_day,_month,_year);
+    }
+}
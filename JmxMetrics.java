@@ -0,0 +1,143 @@
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Publishes a CounterMetrics through JMX, so jconsole, VisualVM or any JMX collector
+ * can read the rejection counts, the default value counts and the latencies.
+ *
+ * The values are read from the CounterMetrics when JMX asks for them; nothing is
+ * copied while the program runs.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public class JmxMetrics implements MetricsMXBean
+{
+    /** The default name the metrics are registered under. */
+    public static final String DEFFAULT_NAME = "apartments:type=Metrics";
+
+    private final CounterMetrics _metrics;
+
+    /**
+     * Creates the JMX view of the metrics (call register to publish it)
+     * @param metrics the metrics to publish
+     */
+    public JmxMetrics(CounterMetrics metrics)
+    {
+        _metrics = metrics;
+    }
+
+    /**
+     * Publishes a CounterMetrics on the platform MBean server under DEFFAULT_NAME
+     * @param metrics the metrics to publish
+     * @return the name it was registered under
+     * @throws JMException if it can't be registered (for example the name is taken)
+     */
+    public static ObjectName register(CounterMetrics metrics) throws JMException{
+        return register(metrics,DEFFAULT_NAME);
+    }
+
+    /**
+     * Publishes a CounterMetrics on the platform MBean server
+     * @param metrics the metrics to publish
+     * @param name the JMX object name
+     * @return the name it was registered under
+     * @throws JMException if it can't be registered (for example the name is taken)
+     */
+    public static ObjectName register(CounterMetrics metrics, String name) throws JMException{
+        ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(
+            new StandardMBean(new JmxMetrics(metrics),MetricsMXBean.class,true),objectName);
+        return objectName;
+    }
+
+    /**
+     * Gets the number of rejections of every changeTenant rule
+     * @return a map from rule name to count
+     */
+    public Map<String, Long> getRejections(){
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for(TenantChangeStatus status : TenantChangeStatus.values()){
+            if(status != TenantChangeStatus.ELIGIBLE){
+                result.put(status.name(),_metrics.getRejections(status));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of times every default value was used
+     * @return a map from default value name to count
+     */
+    public Map<String, Long> getDefaults(){
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for(ApartmentMetrics.Fallback fallback : ApartmentMetrics.Fallback.values()){
+            result.put(fallback.name(),_metrics.getDefaults(fallback));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of timed runs of every operation
+     * @return a map from operation name to count
+     */
+    public Map<String, Long> getLatencyCounts(){
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for(ApartmentMetrics.Operation operation : ApartmentMetrics.Operation.values()){
+            result.put(operation.name(),_metrics.getLatency(operation).getCount());
+        }
+        return result;
+    }
+
+    /**
+     * Gets the median latency of every operation
+     * @return a map from operation name to nanoseconds
+     */
+    public Map<String, Long> getLatencyP50Nanos(){
+        return percentiles(50);
+    }
+
+    /**
+     * Gets the 99th percentile latency of every operation
+     * @return a map from operation name to nanoseconds
+     */
+    public Map<String, Long> getLatencyP99Nanos(){
+        return percentiles(99);
+    }
+
+    /**
+     * Gets the largest latency of every operation
+     * @return a map from operation name to nanoseconds
+     */
+    public Map<String, Long> getLatencyMaxNanos(){
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for(ApartmentMetrics.Operation operation : ApartmentMetrics.Operation.values()){
+            result.put(operation.name(),_metrics.getLatency(operation).getMax());
+        }
+        return result;
+    }
+
+    public boolean isTimingEnabled(){
+        return Metrics.isTimingEnabled();
+    }
+
+    public void setTimingEnabled(boolean enabled){
+        Metrics.setTimingEnabled(enabled);
+    }
+
+    public void reset(){
+        _metrics.reset();
+    }
+
+    private Map<String, Long> percentiles(double percentile){
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for(ApartmentMetrics.Operation operation : ApartmentMetrics.Operation.values()){
+            result.put(operation.name(),_metrics.getLatency(operation).getValueAtPercentile(percentile));
+        }
+        return result;
+    }
+}
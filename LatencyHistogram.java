@@ -0,0 +1,125 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * A histogram of latencies in nanoseconds, in the style of HdrHistogram: fixed memory,
+ * O(1) recording, and percentiles with a bounded relative error.
+ *
+ * Values below 64 get a bucket each. Above that, every power of 2 is split into 32
+ * buckets, so a value is counted in a bucket at most about 3% wider than the value.
+ * Any long value can be recorded (1888 buckets cover 0 to Long.MAX_VALUE).
+ * Recording is thread-safe and lock-free.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 5; // 32 buckets for every power of 2
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS; // values below it have a bucket each
+    private static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray _counts; // number of values in every bucket
+    private final LongAccumulator _max; // the largest value recorded
+
+    /**
+     * Creates an empty histogram
+     */
+    public LatencyHistogram()
+    {
+        _counts = new AtomicLongArray(BUCKETS);
+        _max = new LongAccumulator(Math::max,0);
+    }
+
+    /**
+     * Records one value
+     * @param nanos the value (negative values are recorded as 0)
+     */
+    public void record(long nanos){
+        if(nanos < 0){
+            nanos = 0;
+        }
+        _counts.incrementAndGet(bucketOf(nanos));
+        _max.accumulate(nanos);
+    }
+
+    /**
+     * Gets the number of recorded values
+     * @return the number of values
+     */
+    public long getCount(){
+        long count = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            count += _counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the largest recorded value
+     * @return the largest value (0 if none were recorded)
+     */
+    public long getMax(){
+        return _max.get();
+    }
+
+    /**
+     * Gets the value below which a given percentage of the recorded values are
+     * @param percentile the percentage (0 to 100)
+     * @return the highest value of the bucket that holds that percentile (0 if none were recorded)
+     */
+    public long getValueAtPercentile(double percentile){
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for(int i = 0; i < BUCKETS; i++){ //copy first, other threads may still record.
+            counts[i] = _counts.get(i);
+            total += counts[i];
+        }
+        if(total == 0){
+            return 0;
+        }
+        long rank = Math.max(1,(long)Math.ceil(Math.min(100,Math.max(0,percentile)) / 100 * total));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            seen += counts[i];
+            if(seen >= rank){
+                return Math.min(highestValueOf(i),getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Removes all the recorded values
+     */
+    public void reset(){
+        for(int i = 0; i < BUCKETS; i++){
+            _counts.set(i,0);
+        }
+        _max.reset();
+    }
+
+    /**
+     * Gets the bucket of a value
+     */
+    static int bucketOf(long value){
+        if(value < LINEAR_LIMIT){
+            return (int)value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS; //at least 1.
+        return shift * SUB_BUCKETS + (int)(value >>> shift); //the top 6 bits are 32 to 63.
+    }
+
+    /**
+     * Gets the highest value counted in a bucket
+     */
+    static long highestValueOf(int bucket){
+        if(bucket < LINEAR_LIMIT){
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long top = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1; //for the last bucket this wraps to Long.MAX_VALUE.
+    }
+}
@@ -0,0 +1,276 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A load generator for LeaseQueryServer: many clients, each with its own keep-alive
+ * connection, send a mix of toString, daysLeft and preview requests as fast as the
+ * answers come back. It prints the p50 and p99 latency and the throughput.
+ *
+ * All the clients connect first and then start together. Every client runs on its own
+ * virtual thread when the JVM has them, otherwise on its own platform thread.
+ * Requests and answers are written and parsed by hand over the socket, so the
+ * generator measures the server and not an HTTP client library.
+ *
+ * Run with: java LeaseQueryLoad [clients] [requests per client] [host port]
+ * (default 10000 clients, 20 requests each). Without a host a server over 10000 random
+ * apartments is started in the same process. Every connection takes a file descriptor at
+ * both ends, so 10000 clients in one process need a limit above 20000 (ulimit -n), or a
+ * server in another process.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public class LeaseQueryLoad
+{
+    private static final int DEFFAULT_CLIENTS = 10000;
+    private static final int DEFFAULT_REQUESTS = 20; // requests per client
+    private static final int APARTMENTS = 10000; // apartments of the in-process server
+    private static final long SEED = 19102023L;
+    private static final int OK = 200;
+
+    private final String _host;
+    private final int _port;
+    private final int _apartments; // number of apartments the server has
+    private final LatencyHistogram _latency; // latency of every answered request
+    private final AtomicLong _errors; // requests that failed or did not get 200
+
+    /**
+     * Creates a load generator for a server
+     * @param host the server's host
+     * @param port the server's port
+     * @param apartments the number of apartments the server has (requests ask for 0 to apartments-1)
+     */
+    public LeaseQueryLoad(String host, int port, int apartments)
+    {
+        _host = host;
+        _port = port;
+        _apartments = apartments;
+        _latency = new LatencyHistogram();
+        _errors = new AtomicLong();
+    }
+
+    /**
+     * Runs the clients until every one has sent its requests
+     * @param clients the number of concurrent clients
+     * @param requests the number of requests every client sends
+     * @return the time from the start of the first request to the last answer, in nanoseconds
+     */
+    public long run(int clients, int requests) throws InterruptedException{
+        ExecutorService virtual = LeaseQueryServer.newVirtualThreadExecutor();
+        ExecutorService executor = virtual != null ? virtual : Executors.newCachedThreadPool();
+        CountDownLatch connected = new CountDownLatch(clients);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(clients);
+        for(int c = 0; c < clients; c++){
+            SplittableRandom random = new SplittableRandom(SEED + c); //the same requests in every run.
+            try{
+                executor.execute(() -> {
+                    try{
+                        client(requests,random,connected,go);
+                    }
+                    finally{
+                        done.countDown();
+                    }
+                });
+            }
+            catch(RuntimeException e){ //no thread for this client - count it as failed.
+                _errors.addAndGet(requests);
+                connected.countDown();
+                done.countDown();
+            }
+        }
+        connected.await();
+        long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        long time = System.nanoTime() - start;
+        executor.shutdown();
+        executor.awaitTermination(1,TimeUnit.MINUTES);
+        return time;
+    }
+
+    /**
+     * Gets the latencies of the answered requests
+     * @return the histogram of latencies (nanoseconds)
+     */
+    public LatencyHistogram getLatency(){
+        return _latency;
+    }
+
+    /**
+     * Gets the number of requests that failed (no connection, broken connection or not 200)
+     * @return the number of failed requests
+     */
+    public long getErrors(){
+        return _errors.get();
+    }
+
+    /**
+     * One client: connects, waits for the start and sends its requests one after the other
+     */
+    private void client(int requests, SplittableRandom random, CountDownLatch connected, CountDownLatch go){
+        Socket socket = null;
+        try{
+            socket = new Socket(_host,_port);
+        }
+        catch(IOException | RuntimeException e){
+            _errors.addAndGet(requests);
+            return;
+        }
+        finally{
+            connected.countDown(); //connected or not, the run must not wait for this client.
+        }
+        int sent = 0;
+        try(Socket s = socket){
+            go.await();
+            OutputStream out = s.getOutputStream();
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            for(; sent < requests; sent++){
+                byte[] request = ("GET "+randomPath(random)+" HTTP/1.1\r\nHost: "+_host+"\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+                long start = System.nanoTime();
+                out.write(request);
+                out.flush();
+                int status = readResponse(in);
+                _latency.record(System.nanoTime() - start);
+                if(status != OK){
+                    _errors.incrementAndGet();
+                }
+            }
+        }
+        catch(IOException | RuntimeException e){
+            _errors.addAndGet(requests - sent); //the rest of the requests were not answered.
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates the path of a random request (half daysLeft, a quarter preview, a quarter toString)
+     */
+    private String randomPath(SplittableRandom random){
+        int apartment = random.nextInt(_apartments);
+        String date = (1 + random.nextInt(28))+"/"+(1 + random.nextInt(12))+"/"+(2000 + random.nextInt(30));
+        int kind = random.nextInt(4);
+        if(kind < 2){
+            return "/apartments/"+apartment+"/daysLeft?date="+date;
+        }
+        if(kind == 2){
+            return "/apartments/"+apartment+"/preview?start="+date+"&dob="+(1 + random.nextInt(28))+"/"
+                +(1 + random.nextInt(12))+"/"+(1940 + random.nextInt(70))+"&price="+(3000 + random.nextInt(9000));
+        }
+        return "/apartments/"+apartment;
+    }
+
+    /**
+     * Reads one HTTP response and skips its body
+     * @return the status code
+     */
+    private static int readResponse(InputStream in) throws IOException{
+        String statusLine = readLine(in);
+        if(statusLine.length() < 12){
+            throw new IOException("Bad status line: "+statusLine);
+        }
+        int status = Integer.parseInt(statusLine.substring(9,12)); //HTTP/1.1 200 OK
+        long length = 0;
+        for(String line = readLine(in); !line.isEmpty(); line = readLine(in)){
+            if(line.regionMatches(true,0,"Content-Length:",0,15)){
+                length = Long.parseLong(line.substring(15).trim());
+            }
+        }
+        while(length > 0){
+            long skipped = in.skip(length);
+            if(skipped <= 0){
+                if(in.read() < 0){
+                    throw new IOException("Connection closed in a body");
+                }
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+        return status;
+    }
+
+    /**
+     * Reads a line ending with CRLF (without it)
+     */
+    private static String readLine(InputStream in) throws IOException{
+        StringBuilder sb = new StringBuilder(64);
+        int c;
+        while((c = in.read()) != '\n'){
+            if(c < 0){
+                throw new IOException("Connection closed");
+            }
+            if(c != '\r'){
+                sb.append((char)c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Creates random apartments (fixed seed) for a test server
+     * @param count the number of apartments
+     * @return a new list of thread safe apartments
+     */
+    static List<ConcurrentApartment> randomApartments(int count){
+        Random random = new Random(SEED);
+        List<ConcurrentApartment> apartments = new ArrayList<ConcurrentApartment>(count);
+        for(int i = 0; i < count; i++){
+            Person tenant = new Person("Tenant"+i,1 + random.nextInt(28),1 + random.nextInt(12),
+                1940 + random.nextInt(70),String.valueOf(100000000 + random.nextInt(900000000)));
+            int day = 1 + random.nextInt(28);
+            int month = 1 + random.nextInt(12);
+            int year = 2000 + random.nextInt(30);
+            apartments.add(new ConcurrentApartment(new Apartment(1 + random.nextInt(6),40 + random.nextInt(120),
+                3000 + random.nextInt(7000),tenant,day,month,year,day,month,year + 1 + random.nextInt(3))));
+        }
+        return apartments;
+    }
+
+    /**
+     * Runs the load and prints the results
+     * @param args optional number of clients, requests per client, host and port
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : DEFFAULT_CLIENTS;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : DEFFAULT_REQUESTS;
+        LeaseQueryServer server = null;
+        LeaseQueryLoad load;
+        if(args.length > 3){
+            load = new LeaseQueryLoad(args[2],Integer.parseInt(args[3]),APARTMENTS);
+        }
+        else{
+            LeaseQueryServer.setServerProperties();
+            server = new LeaseQueryServer(randomApartments(APARTMENTS),0);
+            server.start();
+            load = new LeaseQueryLoad("localhost",server.getPort(),APARTMENTS);
+        }
+        long time = load.run(clients,requests);
+        if(server != null){
+            server.stop(0);
+        }
+        LatencyHistogram latency = load.getLatency();
+        System.out.println(String.format(Locale.ROOT,
+            "%d clients x %d requests: %d answered, %d errors in %.2f s = %.0f requests/s",
+            clients,requests,latency.getCount(),load.getErrors(),time / 1e9,latency.getCount() / (time / 1e9)));
+        System.out.println(String.format(Locale.ROOT,"latency p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+            latency.getValueAtPercentile(50) / 1e6,latency.getValueAtPercentile(99) / 1e6,latency.getMax() / 1e6));
+    }
+}
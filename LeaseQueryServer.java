@@ -0,0 +1,267 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small HTTP query service over a portfolio of ConcurrentApartments (JDK only, built on
+ * com.sun.net.httpserver). Apartments are numbered from 0 in the order they were given.
+ * <pre>
+ *   GET /apartments/{n}                                    the apartment (toString)
+ *   GET /apartments/{n}/daysLeft?date=dd/mm/yyyy           daysLeft of that date
+ *   GET /apartments/{n}/preview?start=dd/mm/yyyy&amp;dob=dd/mm/yyyy&amp;price=p
+ *                                                          checkTenantChange of a candidate
+ *                                                          born on dob (ELIGIBLE or the rule)
+ * </pre>
+ * Answers are text/plain. A malformed request gets 400, an unknown apartment or path 404,
+ * any method but GET 405 and an unexpected failure of a handler 500. Dates go through the
+ * Date constructor, so an invalid date becomes 01/01/2000 exactly as it does everywhere else.
+ *
+ * Every request is handled on its own virtual thread when the JVM has them (Java 21 and
+ * later, found by reflection so the class still compiles and runs on Java 17); otherwise on
+ * a cached pool of platform threads. ConcurrentApartment reads never block, so handlers
+ * only wait for the network.
+ *
+ * Run with: java LeaseQueryServer [port] [apartments] (default port 8080, 10000 random apartments)
+ *
+ * main sets two JVM-wide properties of com.sun.net.httpserver (see setServerProperties):
+ * sun.net.httpserver.nodelay=true and sun.net.httpserver.maxIdleConnections=65536. They affect
+ * every HttpServer of the process, so creating a LeaseQueryServer does not set them; a program
+ * that embeds one for many clients should pass them as -D flags.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public class LeaseQueryServer
+{
+    private final ConcurrentApartment[] _apartments; // the portfolio
+    private final HttpServer _server;
+    private final ExecutorService _executor; // runs the handlers
+    private final boolean _virtual; // true if the handlers run on virtual threads
+    private static final int DEFFAULT_PORT = 8080;
+    private static final int DEFFAULT_APARTMENTS = 10000;
+    private static final int BACKLOG = 16384; // connections waiting to be accepted
+    private static final String PREFIX = "/apartments/";
+    private static final String CANDIDATE_NAME = "Candidate"; // the candidate of a preview
+    private static final String CANDIDATE_ID = "000000000";
+    private static final int OK = 200;
+    private static final int BAD_REQUEST = 400;
+    private static final int NOT_FOUND = 404;
+    private static final int METHOD_NOT_ALLOWED = 405;
+    private static final int INTERNAL_SERVER_ERROR = 500;
+    private static final String MAX_IDLE_CONNECTIONS = "65536"; // keep-alive connections kept open between requests
+
+    /**
+     * Creates a server over a portfolio (call start to accept requests)
+     * @param apartments the apartments to serve (the list is copied, the apartments are not)
+     * @param port the port to listen on (0 for any free port)
+     * @throws IOException if the port can't be opened
+     */
+    public LeaseQueryServer(List<ConcurrentApartment> apartments, int port) throws IOException
+    {
+        _apartments = apartments.toArray(new ConcurrentApartment[0]);
+        _server = HttpServer.create(new InetSocketAddress(port),BACKLOG);
+        ExecutorService virtual = newVirtualThreadExecutor();
+        _virtual = virtual != null;
+        _executor = _virtual ? virtual : Executors.newCachedThreadPool();
+        _server.setExecutor(_executor);
+        _server.createContext(PREFIX,this::handle);
+    }
+
+    /**
+     * Starts accepting requests
+     */
+    public void start(){
+        _server.start();
+    }
+
+    /**
+     * Stops accepting requests, waits up to a given time for the running ones and
+     * shuts the handler threads down
+     * @param seconds the longest time to wait for the running requests
+     */
+    public void stop(int seconds){
+        _server.stop(seconds);
+        _executor.shutdown();
+        try{
+            _executor.awaitTermination(seconds,TimeUnit.SECONDS);
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the port the server listens on
+     * @return the port
+     */
+    public int getPort(){
+        return _server.getAddress().getPort();
+    }
+
+    /**
+     * Checks if requests are handled on virtual threads
+     * @return true if virtual threads are used, false if platform threads are
+     */
+    public boolean isVirtual(){
+        return _virtual;
+    }
+
+    /**
+     * Sets the com.sun.net.httpserver properties for many keep-alive clients (unless given
+     * with -D): no Nagle delay, since answers are small, and room for 65536 idle connections,
+     * since the default 200 closes the rest. They are read when the first HttpServer is
+     * created and apply to every HttpServer of the process, so only the mains call this.
+     */
+    static void setServerProperties(){
+        if(System.getProperty("sun.net.httpserver.nodelay") == null){
+            System.setProperty("sun.net.httpserver.nodelay","true");
+        }
+        if(System.getProperty("sun.net.httpserver.maxIdleConnections") == null){
+            System.setProperty("sun.net.httpserver.maxIdleConnections",MAX_IDLE_CONNECTIONS);
+        }
+    }
+
+    /**
+     * Creates an executor that runs every task on a new virtual thread
+     * @return the executor, or null if this JVM has no virtual threads
+     */
+    static ExecutorService newVirtualThreadExecutor(){
+        try{
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch(ReflectiveOperationException e){
+            return null; //before Java 21 (or a preview that is not enabled).
+        }
+    }
+
+    /**
+     * Answers one request
+     */
+    private void handle(HttpExchange exchange) throws IOException{
+        try{
+            if(!"GET".equals(exchange.getRequestMethod())){
+                send(exchange,METHOD_NOT_ALLOWED,"Only GET is supported");
+                return;
+            }
+            URI uri = exchange.getRequestURI();
+            if(!uri.getPath().startsWith(PREFIX)){ //the context also matched without the last '/'.
+                send(exchange,NOT_FOUND,"No such path: "+uri.getPath());
+                return;
+            }
+            String[] path = uri.getPath().substring(PREFIX.length()).split("/");
+            int index = parseIndex(path[0]);
+            if(index < 0 || path.length > 2){
+                send(exchange,NOT_FOUND,"No such apartment or path: "+uri.getPath());
+                return;
+            }
+            ConcurrentApartment a = _apartments[index];
+            if(path.length == 1){
+                send(exchange,OK,a.toString());
+            }
+            else if(path[1].equals("daysLeft")){
+                send(exchange,OK,String.valueOf(a.daysLeft(parseDate(parameter(uri,"date")))));
+            }
+            else if(path[1].equals("preview")){
+                Date start = parseDate(parameter(uri,"start"));
+                Date dateOfBirth = parseDate(parameter(uri,"dob"));
+                double price = Double.parseDouble(parameter(uri,"price"));
+                Person candidate = new Person(CANDIDATE_NAME,dateOfBirth.getDay(),dateOfBirth.getMonth(),
+                    dateOfBirth.getYear(),CANDIDATE_ID);
+                send(exchange,OK,a.checkTenantChange(start,candidate,price).name());
+            }
+            else{
+                send(exchange,NOT_FOUND,"No such path: "+uri.getPath());
+            }
+        }
+        catch(IllegalArgumentException e){ //a missing parameter or a number that can't be parsed.
+            send(exchange,BAD_REQUEST,e.getMessage());
+        }
+        catch(RuntimeException e){ //a bug - answer instead of resetting the connection.
+            send(exchange,INTERNAL_SERVER_ERROR,"Internal error: "+e);
+        }
+        finally{
+            exchange.close();
+        }
+    }
+
+    /**
+     * Gets the apartment number of a path, or -1 if it is not a number of an apartment
+     */
+    private int parseIndex(String s){
+        if(s.isEmpty() || s.length() > 9){ //9 digits always fit an int.
+            return -1;
+        }
+        int index = 0;
+        for(int i = 0; i < s.length(); i++){
+            char c = s.charAt(i);
+            if(c < '0' || c > '9'){
+                return -1;
+            }
+            index = index * 10 + (c - '0');
+        }
+        return index < _apartments.length ? index : -1;
+    }
+
+    /**
+     * Gets the value of a query parameter
+     * @throws IllegalArgumentException if the parameter is missing
+     */
+    private static String parameter(URI uri, String name){
+        String query = uri.getQuery();
+        if(query != null){
+            for(String pair : query.split("&")){
+                if(pair.startsWith(name) && pair.length() > name.length() && pair.charAt(name.length()) == '='){
+                    return pair.substring(name.length() + 1);
+                }
+            }
+        }
+        throw new IllegalArgumentException("Missing parameter: "+name);
+    }
+
+    /**
+     * Parses a dd/mm/yyyy date
+     * @throws IllegalArgumentException if it is not three numbers separated by '/'
+     */
+    private static Date parseDate(String s){
+        String[] parts = s.split("/");
+        if(parts.length != 3){
+            throw new IllegalArgumentException("Not a dd/mm/yyyy date: "+s);
+        }
+        return new Date(Integer.parseInt(parts[0]),Integer.parseInt(parts[1]),Integer.parseInt(parts[2]));
+    }
+
+    /**
+     * Sends a text answer
+     */
+    private static void send(HttpExchange exchange, int status, String text) throws IOException{
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type","text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status,body.length);
+        try(OutputStream out = exchange.getResponseBody()){
+            out.write(body);
+        }
+    }
+
+    /**
+     * Runs a server over random apartments until the process is stopped
+     * @param args optional port and number of apartments
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFFAULT_PORT;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : DEFFAULT_APARTMENTS;
+        setServerProperties();
+        LeaseQueryServer server = new LeaseQueryServer(LeaseQueryLoad.randomApartments(count),port);
+        server.start();
+        System.out.println("Serving "+count+" apartments on port "+server.getPort()
+            +(server.isVirtual() ? " (virtual threads)" : " (platform threads)"));
+    }
+}
@@ -0,0 +1,466 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Simulates years of lease turnover over an ApartmentPortfolio, for capacity and
+ * revenue forecasts.
+ *
+ * The simulation is driven by lease expiry events. Every apartment has one event, on the
+ * day its rental ends. An epoch-day clock jumps from one event day to the next, and all
+ * the events of a day are handled as one batch. At its event an apartment either
+ * - renews (the same as extendRentalPeriod(1)), with the renewal probability, or
+ * - gets a new, younger tenant at a higher price (the same as a changeTenant that the
+ *   rules accept): the new rental starts 1 to 90 days before the old one ends and lasts a year.
+ * The new end day is the apartment's next event. A lease that already ended before the start
+ * date is not caught up year by year: it expires once, on the start day, as if it ended then
+ * (a renewal then runs a year from the start day), so year 0 counts only real turnover.
+ *
+ * Nothing is allocated per event. The values live in primitive arrays, and the events
+ * are longs (end day in the high 32 bits, apartment in the low 32) in a binary min-heap.
+ * The portfolio is split into a fixed number of partitions, every one with its own heap
+ * and its own SplittableRandom, split from the seed in partition order. The partitions
+ * run in parallel on a fork-join pool, and the same seed and settings always give the same
+ * results, whatever the number of threads.
+ *
+ * At the end of every simulated year the results record the renewals and new tenants of
+ * the year, the rent roll (the sum of the prices), and the number of leases that end
+ * within 90 days (the ones daysLeft would show 0 to 90).
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public class LeaseSimulation
+{
+    private ForkJoinPool _pool; // pool that runs the partitions
+    private int _years = DEFFAULT_YEARS; // years to simulate
+    private long _seed = DEFFAULT_SEED;
+    private double _renewalProbability = DEFFAULT_RENEWAL_PROBABILITY;
+    private double _priceIncrease = DEFFAULT_PRICE_INCREASE; // price rise for a new tenant (0.05 is 5%)
+    private int _partitions = DEFFAULT_PARTITIONS;
+    private static final int DEFFAULT_YEARS = 10;
+    private static final long DEFFAULT_SEED = 19102023L;
+    private static final double DEFFAULT_RENEWAL_PROBABILITY = 0.6;
+    private static final double DEFFAULT_PRICE_INCREASE = 0.05;
+    private static final int DEFFAULT_PARTITIONS = 64;
+    private static final int MAX_DAYS_LEFT_TO_CHANGE = 90; // same as Apartment
+    private static final int YOUNGER_BY_DAYS = 3650; // a new tenant is born up to this many days after the old one
+    private static final int DAY_SHIFT = 32; // position of the day in an event
+
+    /**
+     * The results of a simulation.
+     */
+    public static class Result
+    {
+        private final int _startDay; // day number the simulation started on
+        private final int[] _yearEnd; // day number every simulated year ends on (excluded)
+        private final long[] _renewals; // renewals in every year
+        private final long[] _newTenants; // tenant changes in every year
+        private final double[] _rentRoll; // sum of the prices at the end of every year
+        private final long[] _expiringSoon; // leases ending within 90 days of the end of every year
+        private final double[] _price; // final price of every apartment
+        private final int[] _rentalStart; // final rental start day number of every apartment
+        private final int[] _rentalEnd; // final rental end day number of every apartment
+        private long _events; // events handled
+        private long _batches; // event days (batches) handled, summed over the partitions
+
+        private Result(int startDay, int years, int size)
+        {
+            _startDay = startDay;
+            _yearEnd = new int[years];
+            _renewals = new long[years];
+            _newTenants = new long[years];
+            _rentRoll = new double[years];
+            _expiringSoon = new long[years];
+            _price = new double[size];
+            _rentalStart = new int[size];
+            _rentalEnd = new int[size];
+        }
+
+        /**
+         * Gets the date the simulation started on
+         * @return a new Date
+         */
+        public Date getStartDate(){
+            return Date.fromEpochDay(_startDay);
+        }
+
+        /**
+         * Gets the number of simulated years
+         * @return the number of years
+         */
+        public int getYears(){
+            return _yearEnd.length;
+        }
+
+        /**
+         * Gets the number of renewals in a year
+         * @param year the year of the simulation (0 is the first)
+         * @return the number of renewals
+         */
+        public long getRenewals(int year){
+            return _renewals[year];
+        }
+
+        /**
+         * Gets the number of tenant changes in a year
+         * @param year the year of the simulation (0 is the first)
+         * @return the number of new tenants
+         */
+        public long getNewTenants(int year){
+            return _newTenants[year];
+        }
+
+        /**
+         * Gets the rent roll at the end of a year
+         * @param year the year of the simulation (0 is the first)
+         * @return the sum of the prices of all the apartments
+         */
+        public double getRentRoll(int year){
+            return _rentRoll[year];
+        }
+
+        /**
+         * Gets the number of leases that end within 90 days of the end of a year
+         * @param year the year of the simulation (0 is the first)
+         * @return the number of leases ending soon
+         */
+        public long getExpiringSoon(int year){
+            return _expiringSoon[year];
+        }
+
+        /**
+         * Gets the date a year of the simulation ends on (the first day of the next year)
+         * @param year the year of the simulation (0 is the first)
+         * @return a new Date
+         */
+        public Date getYearEnd(int year){
+            return Date.fromEpochDay(_yearEnd[year]);
+        }
+
+        /**
+         * Gets the number of events handled
+         * @return the number of renewals and tenant changes in all the years
+         */
+        public long getEvents(){
+            return _events;
+        }
+
+        /**
+         * Gets the number of batches (event days of every partition) handled
+         * @return the number of batches
+         */
+        public long getBatches(){
+            return _batches;
+        }
+
+        /**
+         * Gets the price of an apartment at the end of the simulation
+         * @param index the index of the apartment in the portfolio
+         * @return its price
+         */
+        public double getPrice(int index){
+            return _price[index];
+        }
+
+        /**
+         * Gets the rental start date of an apartment at the end of the simulation
+         * @param index the index of the apartment in the portfolio
+         * @return a new Date
+         */
+        public Date getRentalStartDate(int index){
+            return Date.fromEpochDay(_rentalStart[index]);
+        }
+
+        /**
+         * Gets the rental end date of an apartment at the end of the simulation
+         * @param index the index of the apartment in the portfolio
+         * @return a new Date
+         */
+        public Date getRentalEndDate(int index){
+            return Date.fromEpochDay(_rentalEnd[index]);
+        }
+    }
+
+    /**
+     * Creates a simulation that uses the common fork-join pool
+     */
+    public LeaseSimulation()
+    {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a simulation that uses the given fork-join pool
+     * @param pool the pool that runs the partitions
+     */
+    public LeaseSimulation(ForkJoinPool pool)
+    {
+        _pool = pool;
+    }
+
+    /**
+     * Sets the number of years to simulate (only if the new value is positive)
+     * @param years the number of years
+     */
+    public void setYears(int years){
+        if(years > 0){
+            _years = years;
+        }
+    }
+
+    /**
+     * Sets the seed of the random choices
+     * @param seed the seed
+     */
+    public void setSeed(long seed){
+        _seed = seed;
+    }
+
+    /**
+     * Sets the probability that a lease is renewed rather than given to a new tenant
+     * (only if the new value is between 0 and 1)
+     * @param probability the renewal probability
+     */
+    public void setRenewalProbability(double probability){
+        if(probability >= 0 && probability <= 1){
+            _renewalProbability = probability;
+        }
+    }
+
+    /**
+     * Sets the price rise for a new tenant (only if the new value is not negative,
+     * changeTenant does not accept a lower price)
+     * @param increase the rise as a part of the price (0.05 is 5%)
+     */
+    public void setPriceIncrease(double increase){
+        if(increase >= 0){
+            _priceIncrease = increase;
+        }
+    }
+
+    /**
+     * Sets the number of partitions the portfolio is split into (only if the new value is positive).
+     * The results depend on it, so keep it fixed to compare runs.
+     * @param partitions the number of partitions
+     */
+    public void setPartitions(int partitions){
+        if(partitions > 0){
+            _partitions = partitions;
+        }
+    }
+
+    /**
+     * Runs the simulation. The portfolio is not changed.
+     * @param portfolio the apartments to simulate
+     * @param start the date the simulation starts on
+     * @return the results
+     */
+    public Result run(ApartmentPortfolio portfolio, Date start){
+        int size = portfolio.size();
+        int startDay = start.toEpochDay();
+        Result result = new Result(startDay,_years,size);
+        int[] dateOfBirth = new int[size];
+        for(int i = 0; i < size; i++){
+            result._price[i] = portfolio.getPrice(i);
+            result._rentalStart[i] = portfolio.getRentalStartDayNumber(i);
+            result._rentalEnd[i] = portfolio.getRentalEndDayNumber(i);
+            dateOfBirth[i] = portfolio.getTenantDateOfBirthDayNumber(i);
+        }
+        for(int y = 0; y < _years; y++){
+            result._yearEnd[y] = Date.addYearsToDayNumber(startDay,y + 1);
+        }
+        int count = Math.min(_partitions,Math.max(1,size));
+        Partition[] partitions = new Partition[count];
+        SplittableRandom root = new SplittableRandom(_seed);
+        for(int p = 0; p < count; p++){ //contiguous ranges, the randoms split in partition order.
+            partitions[p] = new Partition(result,dateOfBirth,(int)((long)size * p / count),
+                (int)((long)size * (p + 1) / count),root.split());
+        }
+        _pool.invoke(new SimulateTask(partitions,0,count));
+        for(int p = 0; p < count; p++){ //add up in partition order, so the sums are always the same.
+            Partition partition = partitions[p];
+            for(int y = 0; y < _years; y++){
+                result._renewals[y] += partition._renewals[y];
+                result._newTenants[y] += partition._newTenants[y];
+                result._rentRoll[y] += partition._rentRoll[y];
+                result._expiringSoon[y] += partition._expiringSoon[y];
+            }
+            result._events += partition._events;
+            result._batches += partition._batches;
+        }
+        return result;
+    }
+
+    /**
+     * Checks if a day number is the day of a valid Date (not 31/08, which Date does not accept)
+     */
+    private static boolean isValidDay(int dayNumber){
+        int packed = Date.dateOfDayNumber(dayNumber);
+        return Date.validDateValue(packed%100,(packed/100)%100,packed/10000);
+    }
+
+    /**
+     * One part of the portfolio (apartments from to to-1), with its own events, random and totals.
+     */
+    private class Partition
+    {
+        private final Result _result; // the arrays of all the apartments (only from-to are touched)
+        private final int[] _dateOfBirth; // tenant's date of birth day number of every apartment
+        private final int _from;
+        private final int _to;
+        private final SplittableRandom _random;
+        private final long[] _heap; // the events, a binary min-heap
+        private int _heapSize;
+        private final long[] _renewals = new long[_years];
+        private final long[] _newTenants = new long[_years];
+        private final double[] _rentRoll = new double[_years];
+        private final long[] _expiringSoon = new long[_years];
+        private long _events;
+        private long _batches;
+
+        private Partition(Result result, int[] dateOfBirth, int from, int to, SplittableRandom random)
+        {
+            _result = result;
+            _dateOfBirth = dateOfBirth;
+            _from = from;
+            _to = to;
+            _random = random;
+            _heap = new long[to - from];
+        }
+
+        /**
+         * Runs this partition for all the years
+         */
+        private void simulate(){
+            for(int i = _from; i < _to; i++){ //leases that ended before the start expire on the start day.
+                push(event(Math.max(_result._rentalEnd[i],_result._startDay),i));
+            }
+            int[] batch = new int[Math.max(1,_to - _from)];
+            for(int y = 0; y < _years; y++){
+                int yearEnd = _result._yearEnd[y];
+                while(_heapSize > 0 && (int)(_heap[0] >> DAY_SHIFT) < yearEnd){
+                    int day = (int)(_heap[0] >> DAY_SHIFT); //the clock moves to the next event day.
+                    int batchSize = 0;
+                    while(_heapSize > 0 && (int)(_heap[0] >> DAY_SHIFT) == day){
+                        batch[batchSize++] = (int)pop();
+                    }
+                    for(int b = 0; b < batchSize; b++){
+                        expire(batch[b],day,y);
+                    }
+                    _events += batchSize;
+                    _batches++;
+                }
+                double rentRoll = 0;
+                long expiringSoon = 0;
+                for(int i = _from; i < _to; i++){
+                    rentRoll += _result._price[i];
+                    int left = _result._rentalEnd[i] - yearEnd; //daysLeft at the end of the year.
+                    if(left >= 0 && left <= MAX_DAYS_LEFT_TO_CHANGE){
+                        expiringSoon++;
+                    }
+                }
+                _rentRoll[y] = rentRoll;
+                _expiringSoon[y] = expiringSoon;
+            }
+        }
+
+        /**
+         * Handles the end of the lease of apartment i on day
+         */
+        private void expire(int i, int day, int year){
+            int end;
+            if(_random.nextDouble() < _renewalProbability){ //extendRentalPeriod(1).
+                end = Date.addYearsToDayNumber(day,1);
+                _renewals[year]++;
+            }
+            else{ //changeTenant: younger tenant, higher price, start 1-90 days before the end.
+                int start = day - 1 - _random.nextInt(MAX_DAYS_LEFT_TO_CHANGE - 1);
+                if(!isValidDay(start)){ //31/08 - one day earlier is still within 90 days.
+                    start--;
+                }
+                int dateOfBirth = _dateOfBirth[i] + 1 + _random.nextInt(YOUNGER_BY_DAYS);
+                if(!isValidDay(dateOfBirth)){ //31/08 - one day later is still younger.
+                    dateOfBirth++;
+                }
+                _dateOfBirth[i] = dateOfBirth;
+                _result._price[i] = _result._price[i] * (1 + _priceIncrease);
+                _result._rentalStart[i] = start;
+                end = Date.addYearsToDayNumber(start,1);
+                _newTenants[year]++;
+            }
+            _result._rentalEnd[i] = end;
+            if(end > day){ //not when the year went past 9999 (the end became 01/01/2000).
+                push(event(end,i));
+            }
+        }
+
+        private long event(int day, int index){
+            return ((long)day << DAY_SHIFT) | index;
+        }
+
+        private void push(long event){
+            int child = _heapSize++;
+            while(child > 0){ //move up while smaller than the parent.
+                int parent = (child - 1) >>> 1;
+                if(_heap[parent] <= event){
+                    break;
+                }
+                _heap[child] = _heap[parent];
+                child = parent;
+            }
+            _heap[child] = event;
+        }
+
+        private long pop(){
+            long top = _heap[0];
+            long last = _heap[--_heapSize];
+            int parent = 0;
+            while(true){ //move the last event down from the root while bigger than a child.
+                int child = 2 * parent + 1;
+                if(child >= _heapSize){
+                    break;
+                }
+                if(child + 1 < _heapSize && _heap[child + 1] < _heap[child]){
+                    child++;
+                }
+                if(last <= _heap[child]){
+                    break;
+                }
+                _heap[parent] = _heap[child];
+                parent = child;
+            }
+            if(_heapSize > 0){
+                _heap[parent] = last;
+            }
+            return top;
+        }
+    }
+
+    /**
+     * Runs a range of partitions, splitting it in two until one partition is left.
+     */
+    private static class SimulateTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        private final Partition[] _partitions;
+        private final int _from;
+        private final int _to;
+
+        private SimulateTask(Partition[] partitions, int from, int to)
+        {
+            _partitions = partitions;
+            _from = from;
+            _to = to;
+        }
+
+        protected void compute(){
+            if(_to - _from == 1){
+                _partitions[_from].simulate();
+                return;
+            }
+            int middle = (_from + _to) >>> 1;
+            invokeAll(new SimulateTask(_partitions,_from,middle),new SimulateTask(_partitions,middle,_to));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Holds the installed ApartmentMetrics and forwards the measurements of the
+ * other classes to it.
+ *
+ * Nothing is measured until metrics are installed (NONE is installed when the program
+ * starts), so the cost on the hot paths is a check of a field. To count:
+ * <pre>
+ *   CounterMetrics metrics = new CounterMetrics();
+ *   Metrics.install(metrics);
+ *   JmxMetrics.register(metrics); //optional, publish the counts through JMX.
+ * </pre>
+ * Timing is turned on separately (setTimingEnabled), because it reads the clock twice
+ * per operation, which costs more than many of the operations themselves.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public final class Metrics
+{
+    /** Metrics that ignore everything (install it to turn the measurements off). */
+    public static final ApartmentMetrics NONE = new ApartmentMetrics(){
+        public void tenantChangeRejected(TenantChangeStatus status){
+        }
+
+        public void defaultUsed(Fallback fallback){
+        }
+
+        public void recordLatency(Operation operation, long nanos){
+        }
+    };
+
+    private static volatile ApartmentMetrics _metrics = NONE; // the installed metrics
+    private static volatile boolean _timingEnabled; // true if operations are timed
+
+    /**
+     * No instances - all the methods are static.
+     */
+    private Metrics()
+    {
+    }
+
+    /**
+     * Gets the installed metrics
+     * @return the installed metrics
+     */
+    public static ApartmentMetrics current(){
+        return _metrics;
+    }
+
+    /**
+     * Installs metrics that will get all the measurements from now on
+     * @param metrics the metrics (NONE to turn the measurements off)
+     */
+    public static void install(ApartmentMetrics metrics){
+        if(metrics == null){
+            throw new IllegalArgumentException("Metrics can't be null, use Metrics.NONE");
+        }
+        _metrics = metrics;
+    }
+
+    /**
+     * Checks if operations are timed
+     * @return true if the latency of operations is recorded
+     */
+    public static boolean isTimingEnabled(){
+        return _timingEnabled;
+    }
+
+    /**
+     * Turns timing of operations on or off
+     * @param enabled true to record the latency of operations
+     */
+    public static void setTimingEnabled(boolean enabled){
+        _timingEnabled = enabled;
+    }
+
+    static void tenantChangeRejected(TenantChangeStatus status){
+        _metrics.tenantChangeRejected(status);
+    }
+
+    static void defaultUsed(ApartmentMetrics.Fallback fallback){
+        _metrics.defaultUsed(fallback);
+    }
+
+    static void recordLatency(ApartmentMetrics.Operation operation, long nanos){
+        _metrics.recordLatency(operation,nanos);
+    }
+}
@@ -0,0 +1,29 @@
+import java.util.Map;
+
+/**
+ * The attributes and operations of the apartment metrics seen through JMX
+ * (see JmxMetrics - maps are shown as tables).
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public interface MetricsMXBean
+{
+    Map<String, Long> getRejections();
+
+    Map<String, Long> getDefaults();
+
+    Map<String, Long> getLatencyCounts();
+
+    Map<String, Long> getLatencyP50Nanos();
+
+    Map<String, Long> getLatencyP99Nanos();
+
+    Map<String, Long> getLatencyMaxNanos();
+
+    boolean isTimingEnabled();
+
+    void setTimingEnabled(boolean enabled);
+
+    void reset();
+}
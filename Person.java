@@ -7,7 +7,7 @@
  * @author Or Saban
  * @version 19/10/2023
  */
-public class Person
+public class Person implements Comparable<Person>
 {
     private String _name; // Name of the person
     private String _id; //ID number of the person
@@ -30,6 +30,7 @@ public class Person
     {
         if(name == "") //if empty get deffault.
         {
+            Metrics.defaultUsed(ApartmentMetrics.Fallback.PERSON_NAME);
             _name = DEFFAULT_NAME;
         }
         else
@@ -37,6 +38,7 @@ public class Person
         _dateOfBirth = new Date(day,month,year); //create date object.
         if(id.length() != ID_LENGTH) //if id length invalid get deffault
         {
+            Metrics.defaultUsed(ApartmentMetrics.Fallback.PERSON_ID);
             _id = DEFFAULT_ID;    
         }
         else
@@ -72,6 +74,40 @@ public class Person
         return _id;
     }
 
+    /**
+     * Packs a 9 digit id into an int (for example "012345678" becomes 12345678)
+     * @param id an id
+     * @return the id as a number, or -1 if it is not exactly 9 digits
+     */
+    static int packId(String id){
+        if(id.length() != ID_LENGTH){
+            return -1;
+        }
+        int packed = 0;
+        for(int i = 0; i < ID_LENGTH; i++){
+            char c = id.charAt(i);
+            if(c < '0' || c > '9'){ //not a digit.
+                return -1;
+            }
+            packed = packed*10 + (c - '0');
+        }
+        return packed;
+    }
+
+    /**
+     * Unpacks an id packed by packId (adds the leading zeros back)
+     * @param packed the packed id (0 to 999999999)
+     * @return the 9 digit id
+     */
+    static String unpackId(int packed){
+        char[] digits = new char[ID_LENGTH];
+        for(int i = ID_LENGTH - 1; i >= 0; i--){
+            digits[i] = (char)('0' + packed%10);
+            packed /= 10;
+        }
+        return new String(digits);
+    }
+
     /**
      * Gets the person's date of birth
      * @return person's date of birth
@@ -115,9 +151,19 @@ public class Person
      * @return a String that represents this Person.
      */
     public String toString(){
-        String personString ="Name: "+_name+"\n"+"ID: "
-            +_id+"\n"+"Date of birth: "+_dateOfBirth.toString(); 
-        return personString;
+        return appendTo(new StringBuilder()).toString();
+    }
+
+    /**
+     * Appends this Person to a StringBuilder, in the same format as toString
+     * @param sb the StringBuilder to append to
+     * @return sb, for chaining
+     */
+    public StringBuilder appendTo(StringBuilder sb){
+        sb.append("Name: ").append(_name).append('\n');
+        sb.append("ID: ").append(_id).append('\n');
+        sb.append("Date of birth: ");
+        return _dateOfBirth.appendTo(sb);
     }
 
     /**
@@ -137,12 +183,35 @@ public class Person
         return false;
     }
 
+    /**
+     * Checks if this Person equals another object (same as equals(Person) for persons)
+     * @param obj another object
+     * @return true if obj is a Person with all the same attributes
+     */
+    public boolean equals(Object obj){
+        if(!(obj instanceof Person)){ //also false for null.
+            return false;
+        }
+        return equals((Person)obj);
+    }
+
+    /**
+     * Returns a hash code for this Person, computed from the id only
+     * (persons that are equal have the same id)
+     * @return the hash code of this Person
+     */
+    public int hashCode(){
+        return _id.hashCode();
+    }
+
     /**
      *Checks which person is older 
      *@param other another person object
      *@return 1 if this person is older than the other person 
      * , -1 if the other person is older than this person.
      * If both people have the same birth date, return 0.
+     * (As a Comparable, sorting puts the youngest person first. Two different
+     * persons with the same birth date compare as 0.)
      */
     public int compareTo(Person other){
         if(_dateOfBirth.before(other._dateOfBirth)){ //if the date before meaning bigger age.
@@ -0,0 +1,247 @@
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Rent-roll totals of a group of apartments: the total price by number of rooms,
+ * the average price per square metre (price/area) and the revenue of the leases
+ * active in a range of dates.
+ *
+ * A RentRoll listens to the apartments added to it and updates its totals when
+ * setPrice, setArea, setNoOfRooms, changeTenant or extendRentalPeriod change one of
+ * them, so the totals are read in O(1). The revenue of a date range depends on the
+ * range, so it is computed when asked, with a parallel stream over the apartments.
+ *
+ * The static methods compute the same totals once over an ApartmentPortfolio with
+ * parallel streams, reading its arrays directly.
+ *
+ * The revenue of a range is the sum of the prices of the apartments whose rental period
+ * (start and end dates included) has at least one day in the range.
+ * Totals are kept as doubles, so after many changes they may differ from a new
+ * computation in the last digits.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public class RentRoll implements ApartmentListener
+{
+    private IdentityHashMap<Apartment, Entry> _entries; // the values each apartment was counted with
+    private HashMap<Integer, Totals> _byRooms; // totals for each number of rooms
+    private double _totalPrice; // sum of the prices
+    private double _pricePerMetreSum; // sum of price/area
+
+    /**
+     * The values an apartment was counted with (so they can be taken out when it changes).
+     */
+    private static class Entry
+    {
+        private int _noOfRooms;
+        private double _area;
+        private double _price;
+        private int _start; // day number of the rental start date
+        private int _end; // day number of the rental end date
+    }
+
+    /**
+     * Totals of the apartments with one number of rooms.
+     */
+    private static class Totals
+    {
+        private int _count;
+        private double _price;
+    }
+
+    /**
+     * Creates an empty rent roll
+     */
+    public RentRoll()
+    {
+        _entries = new IdentityHashMap<Apartment, Entry>();
+        _byRooms = new HashMap<Integer, Totals>();
+    }
+
+    /**
+     * Adds an apartment to the totals (does nothing if it is already counted)
+     * @param a the apartment to add
+     */
+    public void add(Apartment a){
+        if(_entries.containsKey(a)){
+            return;
+        }
+        Entry entry = new Entry();
+        _entries.put(a,entry);
+        count(a,entry);
+        a.addApartmentListener(this); //keep the totals correct when a changes.
+    }
+
+    /**
+     * Removes an apartment from the totals (does nothing if it is not counted)
+     * @param a the apartment to remove
+     */
+    public void remove(Apartment a){
+        Entry entry = _entries.remove(a);
+        if(entry != null){
+            uncount(entry);
+            a.removeApartmentListener(this);
+        }
+    }
+
+    /**
+     * Gets the number of apartments counted
+     * @return the number of apartments
+     */
+    public int size(){
+        return _entries.size();
+    }
+
+    /**
+     * Gets the total price of all the apartments
+     * @return the sum of the prices
+     */
+    public double getTotalPrice(){
+        return _totalPrice;
+    }
+
+    /**
+     * Gets the total price of the apartments with a given number of rooms
+     * @param noOfRooms a number of rooms
+     * @return the sum of their prices (0 if there are none)
+     */
+    public double getTotalPrice(int noOfRooms){
+        Totals totals = _byRooms.get(noOfRooms);
+        return totals == null ? 0 : totals._price;
+    }
+
+    /**
+     * Gets the number of apartments with a given number of rooms
+     * @param noOfRooms a number of rooms
+     * @return the number of apartments with that many rooms
+     */
+    public int getCount(int noOfRooms){
+        Totals totals = _byRooms.get(noOfRooms);
+        return totals == null ? 0 : totals._count;
+    }
+
+    /**
+     * Gets the total price for every number of rooms
+     * @return a new map from number of rooms to total price, ordered by number of rooms
+     */
+    public Map<Integer, Double> getTotalPriceByRooms(){
+        Map<Integer, Double> result = new TreeMap<Integer, Double>();
+        for(Map.Entry<Integer, Totals> e : _byRooms.entrySet()){
+            result.put(e.getKey(),e.getValue()._price);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the average price per square metre (the average of price/area)
+     * @return the average price per square metre (0 if there are no apartments)
+     */
+    public double getAveragePricePerSquareMetre(){
+        return _entries.isEmpty() ? 0 : _pricePerMetreSum / _entries.size();
+    }
+
+    /**
+     * Computes the revenue of the leases active in a range of dates
+     * @param from first date of the range
+     * @param to last date of the range
+     * @return the sum of the prices of the apartments rented on at least one day of the range
+     */
+    public double revenueBetween(Date from, Date to){
+        int first = from.toEpochDay();
+        int last = to.toEpochDay();
+        return _entries.values().parallelStream()
+            .filter(e -> e._start <= last && e._end >= first)
+            .mapToDouble(e -> e._price)
+            .sum();
+    }
+
+    /**
+     * Called by a counted apartment after it changed - replaces its old values in the totals
+     * @param apartment the apartment that changed
+     */
+    public void apartmentChanged(Apartment apartment){
+        Entry entry = _entries.get(apartment);
+        if(entry == null){ //not counted by us.
+            return;
+        }
+        uncount(entry);
+        count(apartment,entry);
+    }
+
+    /**
+     * Computes the total price for every number of rooms of a portfolio (in parallel)
+     * @param portfolio the apartments
+     * @return a new map from number of rooms to total price, ordered by number of rooms
+     */
+    public static Map<Integer, Double> totalPriceByRooms(ApartmentPortfolio portfolio){
+        return IntStream.range(0,portfolio.size()).parallel().boxed()
+            .collect(Collectors.groupingBy(i -> portfolio.getNoOfRooms(i),TreeMap::new,
+                Collectors.summingDouble(i -> portfolio.getPrice(i))));
+    }
+
+    /**
+     * Computes the average price per square metre of a portfolio (in parallel)
+     * @param portfolio the apartments
+     * @return the average of price/area (0 if the portfolio is empty)
+     */
+    public static double averagePricePerSquareMetre(ApartmentPortfolio portfolio){
+        return IntStream.range(0,portfolio.size()).parallel()
+            .mapToDouble(i -> portfolio.getPrice(i) / portfolio.getArea(i))
+            .average().orElse(0);
+    }
+
+    /**
+     * Computes the revenue of the leases of a portfolio active in a range of dates (in parallel)
+     * @param portfolio the apartments
+     * @param from first date of the range
+     * @param to last date of the range
+     * @return the sum of the prices of the apartments rented on at least one day of the range
+     */
+    public static double revenueBetween(ApartmentPortfolio portfolio, Date from, Date to){
+        int first = from.toEpochDay();
+        int last = to.toEpochDay();
+        return IntStream.range(0,portfolio.size()).parallel()
+            .filter(i -> portfolio.getRentalStartDayNumber(i) <= last && portfolio.getRentalEndDayNumber(i) >= first)
+            .mapToDouble(i -> portfolio.getPrice(i))
+            .sum();
+    }
+
+    /**
+     * Reads the apartment's current values into the entry and adds them to the totals
+     */
+    private void count(Apartment a, Entry entry){
+        entry._noOfRooms = a.getNoOfRooms();
+        entry._area = a.getArea();
+        entry._price = a.getPrice();
+        entry._start = a.getRentalStartDayNumber();
+        entry._end = a.getRentalEndDayNumber();
+        Totals totals = _byRooms.get(entry._noOfRooms);
+        if(totals == null){
+            totals = new Totals();
+            _byRooms.put(entry._noOfRooms,totals);
+        }
+        totals._count++;
+        totals._price += entry._price;
+        _totalPrice += entry._price;
+        _pricePerMetreSum += entry._price / entry._area;
+    }
+
+    /**
+     * Takes the entry's values out of the totals
+     */
+    private void uncount(Entry entry){
+        Totals totals = _byRooms.get(entry._noOfRooms);
+        totals._count--;
+        totals._price -= entry._price;
+        if(totals._count == 0){ //no apartments with this number of rooms are left.
+            _byRooms.remove(entry._noOfRooms);
+        }
+        _totalPrice -= entry._price;
+        _pricePerMetreSum -= entry._price / entry._area;
+    }
+}
@@ -0,0 +1,261 @@
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * An index over the rental periods of apartments, answering
+ * "which apartments are rented on date D" and "which rentals overlap [A,B]"
+ * in O(min(n, (k + 1) log n)) expected time (k = number of apartments found) -
+ * every apartment found can cost a path down the tree.
+ *
+ * The index is an interval tree: a randomized balanced binary search tree (treap)
+ * ordered by rental start date, where every node also keeps the latest rental
+ * end date in its subtree so whole subtrees can be skipped during a query.
+ *
+ * The index listens to the apartments it holds, so it stays correct when
+ * setRentalStartDate, setRentalEndDate, extendRentalPeriod or changeTenant
+ * change an indexed apartment. Rental periods include both the start and end dates.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public class RentalIndex implements ApartmentListener
+{
+    private Node _root; // root of the tree (null if empty)
+    private IdentityHashMap<Apartment, Node> _nodes; // the node of every indexed apartment
+    private Random _random; // priorities for balancing the tree
+    private long _nextSequence; // orders apartments with the same start date
+
+    /**
+     * A node of the tree - one indexed apartment.
+     */
+    private static class Node
+    {
+        private Apartment _apartment; // the indexed apartment
+        private int _start; // day number of the rental start date
+        private int _end; // day number of the rental end date
+        private long _sequence; // tie-breaker for equal start dates
+        private int _priority; // random treap priority (parent has the bigger one)
+        private int _maxEnd; // latest end day number in this subtree
+        private Node _left;
+        private Node _right;
+    }
+
+    /**
+     * Creates an empty index
+     */
+    public RentalIndex()
+    {
+        _nodes = new IdentityHashMap<Apartment, Node>();
+        _random = new Random();
+    }
+
+    /**
+     * Adds an apartment to the index (does nothing if it is already indexed)
+     * @param a the apartment to add
+     */
+    public void add(Apartment a){
+        if(_nodes.containsKey(a)){ //already indexed.
+            return;
+        }
+        Node node = new Node();
+        node._apartment = a;
+        _nodes.put(a,node);
+        insert(node);
+        a.addApartmentListener(this); //keep the index correct when a changes.
+    }
+
+    /**
+     * Removes an apartment from the index (does nothing if it is not indexed)
+     * @param a the apartment to remove
+     */
+    public void remove(Apartment a){
+        Node node = _nodes.remove(a);
+        if(node != null){
+            _root = delete(_root,node);
+            a.removeApartmentListener(this);
+        }
+    }
+
+    /**
+     * Checks if an apartment is in the index
+     * @param a an apartment
+     * @return true if the apartment is indexed
+     */
+    public boolean contains(Apartment a){
+        return _nodes.containsKey(a);
+    }
+
+    /**
+     * Gets the number of indexed apartments
+     * @return the number of indexed apartments
+     */
+    public int size(){
+        return _nodes.size();
+    }
+
+    /**
+     * Finds the apartments that are rented on a given date
+     * @param d a date
+     * @return the apartments whose rental period contains d, ordered by rental start date
+     */
+    public List<Apartment> rentedOn(Date d){
+        return overlapping(d,d);
+    }
+
+    /**
+     * Finds the apartments whose rental period overlaps a range of dates
+     * @param from first date of the range
+     * @param to last date of the range
+     * @return the apartments rented on at least one day from 'from' to 'to',
+     * ordered by rental start date (empty if 'to' is before 'from')
+     */
+    public List<Apartment> overlapping(Date from, Date to){
+        List<Apartment> result = new ArrayList<Apartment>();
+        collect(_root,from.toEpochDay(),to.toEpochDay(),result);
+        return result;
+    }
+
+    /**
+     * Called by an indexed apartment after it changed - moves it if its rental period changed
+     * @param apartment the apartment that changed
+     */
+    public void apartmentChanged(Apartment apartment){
+        Node node = _nodes.get(apartment);
+        if(node == null){ //not indexed by us.
+            return;
+        }
+        if(node._start == apartment.getRentalStartDayNumber() && node._end == apartment.getRentalEndDayNumber()){
+            return; //rental period did not change (price, area, etc).
+        }
+        _root = delete(_root,node);
+        insert(node); //insert again with the new period.
+    }
+
+    /**
+     * Adds all the apartments of the subtree that overlap [from,to] to the result (in order)
+     */
+    private void collect(Node node, int from, int to, List<Apartment> result){
+        if(node == null || node._maxEnd < from){ //every rental here ends before 'from'.
+            return;
+        }
+        collect(node._left,from,to,result);
+        if(node._start > to){ //this one and all the right subtree start after 'to'.
+            return;
+        }
+        if(node._end >= from){
+            result.add(node._apartment);
+        }
+        collect(node._right,from,to,result);
+    }
+
+    /**
+     * Reads the apartment's current period into the node and inserts it to the tree
+     */
+    private void insert(Node node){
+        node._start = node._apartment.getRentalStartDayNumber();
+        node._end = node._apartment.getRentalEndDayNumber();
+        node._maxEnd = node._end;
+        node._sequence = _nextSequence++;
+        node._priority = _random.nextInt();
+        node._left = null;
+        node._right = null;
+        _root = insert(_root,node);
+    }
+
+    private Node insert(Node root, Node node){
+        if(root == null){
+            return node;
+        }
+        if(less(node,root)){
+            root._left = insert(root._left,node);
+            if(root._left._priority > root._priority){ //keep the bigger priority on top.
+                root = rotateRight(root);
+            }
+        }
+        else
+        {
+            root._right = insert(root._right,node);
+            if(root._right._priority > root._priority){
+                root = rotateLeft(root);
+            }
+        }
+        update(root);
+        return root;
+    }
+
+    private Node delete(Node root, Node node){
+        if(root == node){ //found, replace it with its two subtrees merged.
+            return merge(root._left,root._right);
+        }
+        if(less(node,root)){
+            root._left = delete(root._left,node);
+        }
+        else
+        {
+            root._right = delete(root._right,node);
+        }
+        update(root);
+        return root;
+    }
+
+    /**
+     * Merges two subtrees where every node of a comes before every node of b
+     */
+    private Node merge(Node a, Node b){
+        if(a == null){
+            return b;
+        }
+        if(b == null){
+            return a;
+        }
+        if(a._priority > b._priority){
+            a._right = merge(a._right,b);
+            update(a);
+            return a;
+        }
+        b._left = merge(a,b._left);
+        update(b);
+        return b;
+    }
+
+    private Node rotateRight(Node node){
+        Node left = node._left;
+        node._left = left._right;
+        left._right = node;
+        update(node); //node is now the child, update it first.
+        update(left);
+        return left;
+    }
+
+    private Node rotateLeft(Node node){
+        Node right = node._right;
+        node._right = right._left;
+        right._left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    /**
+     * Recomputes the latest end date of the node's subtree
+     */
+    private void update(Node node){
+        int maxEnd = node._end;
+        if(node._left != null && node._left._maxEnd > maxEnd){
+            maxEnd = node._left._maxEnd;
+        }
+        if(node._right != null && node._right._maxEnd > maxEnd){
+            maxEnd = node._right._maxEnd;
+        }
+        node._maxEnd = maxEnd;
+    }
+
+    /**
+     * Checks if node a comes before node b in the tree (by start date, then by sequence)
+     */
+    private boolean less(Node a, Node b){
+        return a._start < b._start || (a._start == b._start && a._sequence < b._sequence);
+    }
+}
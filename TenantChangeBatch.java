@@ -0,0 +1,205 @@
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Applies many tenant change proposals at once.
+ *
+ * A proposal is (apartment, start date, candidate tenant, offered price). Running a batch:
+ * 1. checks every proposal with Apartment.checkTenantChange in parallel on a fork-join pool,
+ * 2. picks one winner per apartment among its eligible proposals - the highest price,
+ *    then the youngest candidate, then the earliest proposal in the list,
+ * 3. applies each winner with changeTenant, one apartment at a time, so every change is
+ *    applied completely before the next one (apartment listeners are not called concurrently).
+ *
+ * After the run every proposal has its status (the rule that rejected it, or ELIGIBLE)
+ * and whether it was applied. An ELIGIBLE proposal that was not applied lost to
+ * another proposal for the same apartment.
+ *
+ * The apartments must not be changed by other threads while a batch runs.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public class TenantChangeBatch
+{
+    private ForkJoinPool _pool; // pool that checks the proposals
+    private static final int CHUNK_SIZE = 4096; // proposals checked by one task without splitting
+
+    /**
+     * A single tenant change proposal and its outcome.
+     * The dates and persons given are used as they are (not copied).
+     */
+    public static class Proposal
+    {
+        private final Apartment _apartment;
+        private final Date _startDate;
+        private final Person _candidate;
+        private final double _price;
+        private TenantChangeStatus _status; // result of the check (null before the batch runs)
+        private boolean _applied; // true if this proposal changed the tenant
+
+        /**
+         * Creates a proposal to change the tenant of an apartment
+         * @param apartment the apartment
+         * @param startDate the new rental start date
+         * @param candidate the new tenant
+         * @param price the offered price
+         */
+        public Proposal(Apartment apartment, Date startDate, Person candidate, double price)
+        {
+            _apartment = apartment;
+            _startDate = startDate;
+            _candidate = candidate;
+            _price = price;
+        }
+
+        /**
+         * Gets the apartment to change
+         * @return the apartment to change
+         */
+        public Apartment getApartment(){
+            return _apartment;
+        }
+
+        /**
+         * Gets the new rental start date
+         * @return the new rental start date
+         */
+        public Date getStartDate(){
+            return _startDate;
+        }
+
+        /**
+         * Gets the new tenant
+         * @return the new tenant
+         */
+        public Person getCandidate(){
+            return _candidate;
+        }
+
+        /**
+         * Gets the offered price
+         * @return the offered price
+         */
+        public double getPrice(){
+            return _price;
+        }
+
+        /**
+         * Gets the result of checking this proposal
+         * @return ELIGIBLE or the rule that rejected it (null if the batch did not run yet)
+         */
+        public TenantChangeStatus getStatus(){
+            return _status;
+        }
+
+        /**
+         * Checks if this proposal changed the tenant
+         * @return true if this proposal was the winner for its apartment and was applied
+         */
+        public boolean isApplied(){
+            return _applied;
+        }
+    }
+
+    /**
+     * Creates a batch engine that uses the common fork-join pool
+     */
+    public TenantChangeBatch()
+    {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a batch engine that uses the given fork-join pool
+     * @param pool the pool that checks the proposals
+     */
+    public TenantChangeBatch(ForkJoinPool pool)
+    {
+        _pool = pool;
+    }
+
+    /**
+     * Checks all the proposals, and applies the winner of every apartment
+     * @param proposals the proposals (their status and applied flag are updated)
+     * @return the number of tenants that were changed
+     */
+    public int run(List<Proposal> proposals){
+        long start = Metrics.isTimingEnabled() ? System.nanoTime() : 0;
+        Proposal[] all = proposals.toArray(new Proposal[0]);
+        _pool.invoke(new CheckTask(all,0,all.length)); //step 1 - check in parallel.
+
+        IdentityHashMap<Apartment, Proposal> winners = new IdentityHashMap<Apartment, Proposal>();
+        for(int i = 0; i < all.length; i++){ //step 2 - best eligible proposal per apartment.
+            Proposal p = all[i];
+            if(p._status == TenantChangeStatus.ELIGIBLE){
+                Proposal best = winners.get(p._apartment);
+                if(best == null || better(p,best)){
+                    winners.put(p._apartment,p);
+                }
+            }
+        }
+
+        int changed = 0;
+        for(Proposal winner : winners.values()){ //step 3 - apply the winners (rejections are not counted here).
+            winner._status = winner._apartment.applyTenantChange(winner._startDate,winner._candidate,winner._price);
+            if(winner._status == TenantChangeStatus.ELIGIBLE){
+                winner._applied = true;
+                changed++;
+            }
+            //else the apartment changed since it was checked.
+        }
+        for(int i = 0; i < all.length; i++){ //count every rejection once, with its final status.
+            if(all[i]._status != TenantChangeStatus.ELIGIBLE){
+                Metrics.tenantChangeRejected(all[i]._status);
+            }
+        }
+        if(Metrics.isTimingEnabled()){
+            Metrics.recordLatency(ApartmentMetrics.Operation.TENANT_CHANGE_BATCH,System.nanoTime() - start);
+        }
+        return changed;
+    }
+
+    /**
+     * Checks if proposal a should win over proposal b (same apartment, a comes later in the list)
+     */
+    private boolean better(Proposal a, Proposal b){
+        if(a._price != b._price){
+            return a._price > b._price; //higher price wins.
+        }
+        return a._candidate.compareTo(b._candidate) < 0; //then the younger candidate.
+    }
+
+    /**
+     * Fork-join task that checks the proposals from index 'from' (inclusive) to 'to' (exclusive)
+     */
+    private static class CheckTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        private final Proposal[] _proposals;
+        private final int _from;
+        private final int _to;
+
+        private CheckTask(Proposal[] proposals, int from, int to)
+        {
+            _proposals = proposals;
+            _from = from;
+            _to = to;
+        }
+
+        protected void compute(){
+            if(_to - _from <= CHUNK_SIZE){ //small enough, check here.
+                for(int i = _from; i < _to; i++){
+                    Proposal p = _proposals[i];
+                    p._applied = false;
+                    p._status = p._apartment.checkTenantChange(p._startDate,p._candidate,p._price);
+                }
+                return;
+            }
+            int middle = (_from + _to) >>> 1;
+            invokeAll(new CheckTask(_proposals,_from,middle),new CheckTask(_proposals,middle,_to));
+        }
+    }
+}
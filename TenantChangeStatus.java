@@ -0,0 +1,15 @@
+/**
+ * The result of checking a tenant change (see Apartment.checkTenantChange).
+ * ELIGIBLE means the change is allowed; every other value names the rule that rejected it.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public enum TenantChangeStatus
+{
+    ELIGIBLE, // all the rules pass, the tenant can be changed
+    NOT_YOUNGER, // the new tenant is not younger than the current tenant
+    PRICE_TOO_LOW, // the new price is smaller than the current price
+    START_NOT_BEFORE_END, // the new start date is on or after the current rental end date
+    TOO_EARLY // more than 90 days are left until the current rental end date
+}
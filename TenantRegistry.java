@@ -0,0 +1,255 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A registry of tenants, keeping one shared Person object per id.
+ *
+ * Persons are found by their 9 digit id, which is stored as a primitive long key in an
+ * open-addressing hash table (no String keys or boxed numbers). A second index keeps the
+ * persons sorted by date of birth (epoch day), so "all the persons younger than X" is a
+ * binary search and a range copy instead of calling compareTo on every person. The index
+ * is a sorted int[] of epoch days of birth with a parallel Person[], rebuilt by the first
+ * query after the registry changed - no boxed keys or list per birth day.
+ *
+ * intern returns the registered Person for an id, so many records of the same tenant can
+ * share one object instead of each keeping its own copy. The registered objects are
+ * shared - callers must not change them (use the copy constructor to get a private copy).
+ * Persons whose id is not 9 digits, or is the default id 000000000, can't be told apart
+ * by id and are never registered.
+ *
+ * @author Or Saban
+ * @version 19/10/2023
+ */
+public class TenantRegistry
+{
+    private static final long EMPTY = -1; // key of an empty slot (ids are 0 to 999999999)
+    private static final int DEFFAULT_CAPACITY = 16; // slots (power of 2)
+    private static final String DEFFAULT_ID = "000000000"; // the id Person uses when the id is invalid
+
+    private long[] _keys; // packed id of every slot (EMPTY if the slot is free)
+    private Person[] _persons; // registered person of every slot
+    private int[] _birthDays; // epoch day of birth the person was indexed with
+    private int _size; // number of registered persons
+    private int[] _sortedBirthDays; // epoch day of birth of every person, sorted (null after a change)
+    private Person[] _sortedPersons; // the person of every entry of _sortedBirthDays
+
+    /**
+     * Creates an empty registry
+     */
+    public TenantRegistry()
+    {
+        _keys = new long[DEFFAULT_CAPACITY];
+        _persons = new Person[DEFFAULT_CAPACITY];
+        _birthDays = new int[DEFFAULT_CAPACITY];
+        Arrays.fill(_keys,EMPTY);
+    }
+
+    /**
+     * Gets the number of registered persons
+     * @return the number of registered persons
+     */
+    public int size(){
+        return _size;
+    }
+
+    /**
+     * Returns the registered Person with the same id as p. If none is registered, or the
+     * registered one is not equal to p (name or date of birth changed), a copy of p is
+     * registered (replacing the old one) and returned.
+     * @param p a person
+     * @return the shared registered Person equal to p, or p itself if its id can't be registered
+     */
+    public Person intern(Person p){
+        long key = keyOf(p.getId());
+        if(key == EMPTY){ //can't be registered.
+            return p;
+        }
+        int slot = slotOf(key);
+        if(_keys[slot] == key){
+            if(_persons[slot].equals(p)){ //already registered.
+                return _persons[slot];
+            }
+        }
+        else
+        {
+            if((_size + 1) * 4 > _keys.length * 3){ //keep the table at most 3/4 full.
+                resize(_keys.length * 2);
+                slot = slotOf(key);
+            }
+            _keys[slot] = key;
+            _size++;
+        }
+        Person registered = new Person(p); //private copy, the caller may change p.
+        _persons[slot] = registered;
+        _birthDays[slot] = registered.getDateOfBirth().toEpochDay();
+        _sortedBirthDays = null; //rebuilt by the next query.
+        return registered;
+    }
+
+    /**
+     * Gets the registered Person with a given id
+     * @param id a 9 digit id
+     * @return the registered Person, or null if there is none
+     */
+    public Person get(String id){
+        long key = keyOf(id);
+        if(key == EMPTY){
+            return null;
+        }
+        int slot = slotOf(key);
+        return _keys[slot] == key ? _persons[slot] : null;
+    }
+
+    /**
+     * Removes the Person with a given id from the registry
+     * @param id a 9 digit id
+     * @return the removed Person, or null if there was none
+     */
+    public Person remove(String id){
+        long key = keyOf(id);
+        if(key == EMPTY){
+            return null;
+        }
+        int slot = slotOf(key);
+        if(_keys[slot] != key){
+            return null;
+        }
+        Person removed = _persons[slot];
+        deleteSlot(slot);
+        _sortedBirthDays = null; //rebuilt by the next query.
+        _size--;
+        return removed;
+    }
+
+    /**
+     * Finds the registered persons younger than a given person
+     * (born after them - p.compareTo(person) would return 1)
+     * @param p a person
+     * @return the younger registered persons, from the oldest to the youngest
+     */
+    public List<Person> youngerThan(Person p){
+        buildBirthIndex();
+        int birthDay = p.getDateOfBirth().toEpochDay();
+        int low = 0;
+        int high = _size;
+        while(low < high){ //first person born after birthDay.
+            int middle = (low + high) >>> 1;
+            if(_sortedBirthDays[middle] <= birthDay){
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return new ArrayList<Person>(Arrays.asList(Arrays.copyOfRange(_sortedPersons,low,_size))); //array copies, no loop.
+    }
+
+    /**
+     * Finds the registered persons younger than the current tenant of an apartment
+     * (the candidates that pass the age rule of changeTenant)
+     * @param a an apartment
+     * @return the younger registered persons, from the oldest to the youngest
+     */
+    public List<Person> youngerThanTenantOf(Apartment a){
+        return youngerThan(a.getTenantNoCopy());
+    }
+
+    /**
+     * Turns an id into a key (EMPTY if it is not 9 digits or is the default id)
+     */
+    private static long keyOf(String id){
+        if(DEFFAULT_ID.equals(id)){
+            return EMPTY;
+        }
+        int packed = Person.packId(id);
+        return packed < 0 ? EMPTY : packed;
+    }
+
+    /**
+     * Gets the first slot for a key
+     */
+    private int homeSlot(long key){
+        return (int)((key * 0x9E3779B97F4A7C15L) >>> 32) & (_keys.length - 1); //spread the bits.
+    }
+
+    /**
+     * Gets the slot that holds the key, or the empty slot where it would be added
+     */
+    private int slotOf(long key){
+        int mask = _keys.length - 1;
+        int slot = homeSlot(key);
+        while(_keys[slot] != EMPTY && _keys[slot] != key){ //linear probing.
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Empties a slot, moving back later entries of the same probe run so lookups still find them
+     */
+    private void deleteSlot(int hole){
+        int mask = _keys.length - 1;
+        int next = (hole + 1) & mask;
+        while(_keys[next] != EMPTY){
+            int home = homeSlot(_keys[next]);
+            if(((next - home) & mask) >= ((next - hole) & mask)){ //the hole is on its probe path.
+                _keys[hole] = _keys[next];
+                _persons[hole] = _persons[next];
+                _birthDays[hole] = _birthDays[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        _keys[hole] = EMPTY;
+        _persons[hole] = null;
+    }
+
+    /**
+     * Moves all the entries to a new table of the given capacity
+     */
+    private void resize(int capacity){
+        long[] keys = _keys;
+        Person[] persons = _persons;
+        int[] birthDays = _birthDays;
+        _keys = new long[capacity];
+        _persons = new Person[capacity];
+        _birthDays = new int[capacity];
+        Arrays.fill(_keys,EMPTY);
+        for(int i = 0; i < keys.length; i++){
+            if(keys[i] != EMPTY){
+                int slot = slotOf(keys[i]);
+                _keys[slot] = keys[i];
+                _persons[slot] = persons[i];
+                _birthDays[slot] = birthDays[i];
+            }
+        }
+    }
+
+    /**
+     * Sorts the date of birth index again if the registry changed since it was built
+     * (one sort after many changes instead of keeping it sorted on every change)
+     */
+    private void buildBirthIndex(){
+        if(_sortedBirthDays != null){
+            return;
+        }
+        long[] entries = new long[_size]; //epoch day of birth << 32 | slot, sorted by day.
+        int n = 0;
+        for(int slot = 0; slot < _keys.length; slot++){
+            if(_keys[slot] != EMPTY){
+                entries[n++] = (long)_birthDays[slot] << 32 | slot; //epoch days are positive.
+            }
+        }
+        Arrays.sort(entries);
+        int[] birthDays = new int[_size];
+        Person[] persons = new Person[_size];
+        for(int i = 0; i < _size; i++){
+            birthDays[i] = (int)(entries[i] >>> 32);
+            persons[i] = _persons[(int)entries[i]];
+        }
+        _sortedBirthDays = birthDays;
+        _sortedPersons = persons;
+    }
+}